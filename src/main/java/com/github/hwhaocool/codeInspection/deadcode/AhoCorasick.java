@@ -0,0 +1,151 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import gnu.trove.TIntArrayList;
+import gnu.trove.TLongIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * 按字节的 Aho-Corasick 自动机，一次读完文本就能找出所有模式串出现的位置
+ * <p>
+ * 转移存在一个 (状态, 字节) -> 状态 的 hash 表里，不是每个状态一个 256 的数组，几万个全限定名也不会占太多内存；
+ * 失败时沿 fail 链回退，输出沿 dictionary link 收集
+ * @author YellowTail
+ * @since 2020-12-28
+ */
+public final class AhoCorasick {
+
+    /**
+     * 根状态，不会是任何状态的子节点，所以转移表里查不到时返回的 0 可以当作“没有”
+     */
+    private static final int ROOT = 0;
+
+    private final TLongIntHashMap myGoto = new TLongIntHashMap();
+
+    private final int[] myFail;
+
+    /**
+     * 在这个状态结束的模式串下标，没有为 -1
+     */
+    private final int[] myOutput;
+
+    /**
+     * fail 链上下一个有输出的状态，没有为 -1
+     */
+    private final int[] myDictionaryLink;
+
+    private final int[] myPatternLengths;
+
+    /**
+     * @param patterns 模式串，不能有重复、不能为空
+     */
+    public AhoCorasick(@NotNull List<byte[]> patterns) {
+        TIntArrayList output = new TIntArrayList();
+        TIntArrayList firstChild = new TIntArrayList();
+        TIntArrayList nextSibling = new TIntArrayList();
+        TIntArrayList label = new TIntArrayList();
+        newState(output, firstChild, nextSibling, label, -1);
+
+        myPatternLengths = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            byte[] pattern = patterns.get(p);
+            myPatternLengths[p] = pattern.length;
+
+            int state = ROOT;
+            for (byte b : pattern) {
+                int child = myGoto.get(key(state, b));
+                if (child == ROOT) {
+                    child = newState(output, firstChild, nextSibling, label, b & 0xFF);
+                    nextSibling.set(child, firstChild.get(state));
+                    firstChild.set(state, child);
+                    myGoto.put(key(state, b), child);
+                }
+                state = child;
+            }
+            output.set(state, p);
+        }
+
+        int size = output.size();
+        myOutput = output.toNativeArray();
+        myFail = new int[size];
+        myDictionaryLink = new int[size];
+        myDictionaryLink[ROOT] = -1;
+
+        // 按层遍历，父节点的 fail 先算好
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child = firstChild.get(ROOT); child != ROOT; child = nextSibling.get(child)) {
+            myFail[child] = ROOT;
+            myDictionaryLink[child] = -1;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (int child = firstChild.get(state); child != ROOT; child = nextSibling.get(child)) {
+                byte b = (byte) label.get(child);
+                int fail = myFail[state];
+                while (fail != ROOT && myGoto.get(key(fail, b)) == ROOT) {
+                    fail = myFail[fail];
+                }
+                int target = myGoto.get(key(fail, b));
+                myFail[child] = target;
+                myDictionaryLink[child] = myOutput[target] >= 0 ? target : myDictionaryLink[target];
+                queue.add(child);
+            }
+        }
+    }
+
+    private static int newState(TIntArrayList output, TIntArrayList firstChild, TIntArrayList nextSibling, TIntArrayList label, int b) {
+        output.add(-1);
+        firstChild.add(ROOT);
+        nextSibling.add(ROOT);
+        label.add(b);
+        return output.size() - 1;
+    }
+
+    private static long key(int state, byte b) {
+        return ((long) state << 8) | (b & 0xFF);
+    }
+
+    public int getPatternLength(int pattern) {
+        return myPatternLengths[pattern];
+    }
+
+    /**
+     * 在 buffer 的 [position, limit) 里找所有模式串，不改变 buffer 的 position
+     * @param buffer 文本
+     * @param processor 处理匹配，返回 false 停止
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    public void search(@NotNull ByteBuffer buffer, @NotNull MatchProcessor processor) {
+        int state = ROOT;
+        for (int i = buffer.position(), limit = buffer.limit(); i < limit; i++) {
+            byte b = buffer.get(i);
+            int next;
+            while ((next = myGoto.get(key(state, b))) == ROOT && state != ROOT) {
+                state = myFail[state];
+            }
+            state = next;
+
+            for (int s = myOutput[state] >= 0 ? state : myDictionaryLink[state]; s > ROOT; s = myDictionaryLink[s]) {
+                int pattern = myOutput[s];
+                if (!processor.process(pattern, i + 1 - myPatternLengths[pattern], i + 1)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public interface MatchProcessor {
+        /**
+         * @param pattern 模式串下标
+         * @param start 开始位置
+         * @param end 结束位置（不包含）
+         * @return false 停止查找
+         */
+        boolean process(int pattern, int start, int end);
+    }
+}
@@ -0,0 +1,62 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 定长、无锁、可以多线程同时写的 bitset
+ * @author YellowTail
+ * @since 2020-12-21
+ */
+public class AtomicBitSet {
+
+    private final AtomicLongArray myWords;
+
+    public AtomicBitSet(int size) {
+        myWords = new AtomicLongArray((size + 63) >>> 6);
+    }
+
+    /**
+     * 设置一位
+     * @param index 下标
+     * @return 原来是 0、这次由当前线程设置成 1 的时候返回 true
+     * @author YellowTail
+     * @since 2020-12-21
+     */
+    public boolean set(int index) {
+        int word = index >>> 6;
+        long mask = 1L << index;
+        while (true) {
+            long old = myWords.get(word);
+            if ((old & mask) != 0) {
+                return false;
+            }
+            if (myWords.compareAndSet(word, old, old | mask)) {
+                return true;
+            }
+        }
+    }
+
+    public boolean get(int index) {
+        return (myWords.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * @return from 以及之后第一个是 1 的下标，没有的话返回 -1
+     */
+    public int nextSetBit(int from) {
+        int word = from >>> 6;
+        if (word >= myWords.length()) {
+            return -1;
+        }
+        long bits = myWords.get(word) & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == myWords.length()) {
+                return -1;
+            }
+            bits = myWords.get(word);
+        }
+    }
+}
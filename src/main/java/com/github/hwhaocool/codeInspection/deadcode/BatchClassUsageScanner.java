@@ -0,0 +1,241 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.impl.cache.impl.id.IdIndex;
+import com.intellij.psi.impl.cache.impl.id.IdIndexEntry;
+import com.intellij.util.indexing.FileBasedIndex;
+import gnu.trove.TIntObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.uast.UClass;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 一次性找出一批类在外部（{@link ExternalUsageScope}）有没有被使用，代替每个类一次 enqueueClassUsagesProcessor
+ * <p>
+ * 所有候选类的短名按词索引的 hash 放到一张表里，外部范围里的每个文件只读一次它在词索引（IdIndex）里的词，
+ * 和表做一次连接就知道这个文件可能用到了哪些类；
+ * 然后在文件里找这些名字出现的位置，findReferenceAt + isReferenceTo 确认真的引用了这个类；
+ * 文件所在的模块没有依赖类所在的模块（{@link ModuleDependents}）的不用确认。
+ * <p>
+ * 只认文本里写出来的引用，ReferencesSearch 扩展（框架的隐式引用之类）找到的用法这里找不到，所以是一个可选的模式
+ * @author YellowTail
+ * @since 2020-12-27
+ */
+public class BatchClassUsageScanner {
+    private static final Logger LOG = Logger.getInstance(BatchClassUsageScanner.class);
+
+    private final GlobalInspectionContext myContext;
+
+    private final List<RefClass> myPending = new ArrayList<>();
+
+    public BatchClassUsageScanner(@NotNull GlobalInspectionContext context) {
+        myContext = context;
+    }
+
+    public void add(@NotNull RefClass refClass) {
+        myPending.add(refClass);
+    }
+
+    public boolean isEmpty() {
+        return myPending.isEmpty();
+    }
+
+    /**
+     * 扫描外部范围里的所有文件，找到用法的类交给 onUsed（在读锁里调用）
+     * @param onUsed 处理有外部用法的类
+     * @param budget 时间预算，这一轮时间用完的话剩下的文件不扫了，还没找到用法的类都当作被使用了
+     * @return 有外部用法的类的数量
+     * @author YellowTail
+     * @since 2020-12-27
+     */
+    public int run(@NotNull Consumer<RefClass> onUsed, @NotNull SearchBudget budget) {
+        long start = System.currentTimeMillis();
+        Project project = myContext.getProject();
+        ExternalUsageScope scope = ExternalUsageScope.getInstance(myContext);
+
+        ModuleDependents dependents = ModuleDependents.getInstance(myContext);
+        List<Candidate> candidates = new ArrayList<>();
+        TIntObjectHashMap<List<Candidate>> byWordHash = ReadAction.compute(() -> groupByWordHash(dependents, candidates));
+        myPending.clear();
+
+        List<VirtualFile> files = new ArrayList<>();
+        ProjectFileIndex.getInstance(project).iterateContent(file -> {
+            if (!file.isDirectory() && scope.contains(file)) {
+                files.add(file);
+            }
+            return true;
+        });
+
+        List<RefClass> used = new ArrayList<>();
+        int scanned = 0;
+        for (VirtualFile file : files) {
+            ProgressManager.checkCanceled();
+            if (budget.isExpired()) {
+                break;
+            }
+            ReadAction.run(() -> scanFile(project, file, byWordHash, dependents, used));
+            scanned++;
+        }
+
+        int conceded = 0;
+        if (scanned < files.size()) {
+            // 没扫完不知道有没有使用，宁放过，勿杀错
+            for (Candidate candidate : candidates) {
+                if (!candidate.myUsed) {
+                    candidate.myUsed = true;
+                    used.add(candidate.myRefClass);
+                    conceded++;
+                }
+            }
+            RunStatistics.getInstance(myContext).add("elements conceded by time budget", conceded);
+        }
+
+        ReadAction.run(() -> used.forEach(onUsed));
+
+        LOG.info(String.format("batch class usage scan: %d of %d files, %d classes used, %d conceded by time budget, %d ms",
+                scanned, files.size(), used.size(), conceded, System.currentTimeMillis() - start));
+        return used.size();
+    }
+
+    @NotNull
+    private TIntObjectHashMap<List<Candidate>> groupByWordHash(@NotNull ModuleDependents dependents, @NotNull List<Candidate> candidates) {
+        TIntObjectHashMap<List<Candidate>> byWordHash = new TIntObjectHashMap<>();
+        for (RefClass refClass : myPending) {
+            UClass uClass = refClass.getUastElement();
+            PsiClass psiClass = uClass == null ? null : uClass.getJavaPsi();
+            String name = psiClass == null ? null : psiClass.getName();
+            if (name == null) {
+                continue;
+            }
+
+            PsiFile psiFile = psiClass.getContainingFile();
+            Module module = dependents.getModule(psiFile == null ? null : psiFile.getVirtualFile());
+            Candidate candidate = new Candidate(refClass, psiClass, name, module);
+            candidates.add(candidate);
+            // 不同文件类型的词索引有的区分大小写，有的不区分，两种 hash 都放进去
+            int caseSensitive = new IdIndexEntry(name, true).getWordHashCode();
+            int caseInsensitive = new IdIndexEntry(name, false).getWordHashCode();
+            addCandidate(byWordHash, caseSensitive, candidate);
+            if (caseInsensitive != caseSensitive) {
+                addCandidate(byWordHash, caseInsensitive, candidate);
+            }
+        }
+        return byWordHash;
+    }
+
+    private static void addCandidate(@NotNull TIntObjectHashMap<List<Candidate>> byWordHash, int hash, @NotNull Candidate candidate) {
+        List<Candidate> candidates = byWordHash.get(hash);
+        if (candidates == null) {
+            candidates = new ArrayList<>(1);
+            byWordHash.put(hash, candidates);
+        }
+        candidates.add(candidate);
+    }
+
+    private static void scanFile(@NotNull Project project,
+                                 @NotNull VirtualFile file,
+                                 @NotNull TIntObjectHashMap<List<Candidate>> byWordHash,
+                                 @NotNull ModuleDependents dependents,
+                                 @NotNull List<RefClass> used) {
+        Map<IdIndexEntry, Integer> words = FileBasedIndex.getInstance().getFileData(IdIndex.NAME, file, project);
+        if (words.isEmpty()) {
+            return;
+        }
+
+        // 文件所在的模块没有依赖类所在的模块的话，不可能引用到这个类
+        Module fileModule = dependents.getModule(file);
+        Set<Candidate> hits = new LinkedHashSet<>();
+        for (IdIndexEntry word : words.keySet()) {
+            List<Candidate> candidates = byWordHash.get(word.getWordHashCode());
+            if (candidates == null) {
+                continue;
+            }
+            for (Candidate candidate : candidates) {
+                if (!candidate.myUsed && dependents.canReference(fileModule, candidate.myModule)) {
+                    hits.add(candidate);
+                }
+            }
+        }
+        if (hits.isEmpty()) {
+            return;
+        }
+
+        PsiFile psiFile = PsiManager.getInstance(project).findFile(file);
+        if (psiFile == null) {
+            return;
+        }
+        for (Candidate candidate : hits) {
+            if (isReferencedIn(psiFile, candidate)) {
+                candidate.myUsed = true;
+                used.add(candidate.myRefClass);
+            }
+        }
+    }
+
+    private static boolean isReferencedIn(@NotNull PsiFile psiFile, @NotNull Candidate candidate) {
+        CharSequence text = psiFile.getViewProvider().getContents();
+        String name = candidate.myName;
+        for (int offset = StringUtil.indexOf(text, name, 0); offset >= 0; offset = StringUtil.indexOf(text, name, offset + 1)) {
+            if (!isWholeWord(text, offset, name.length())) {
+                continue;
+            }
+            for (PsiFile root : psiFile.getViewProvider().getAllFiles()) {
+                PsiReference reference = root.findReferenceAt(offset);
+                if (reference != null && reference.isReferenceTo(candidate.myClass)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWholeWord(@NotNull CharSequence text, int offset, int length) {
+        int end = offset + length;
+        return (offset == 0 || !Character.isJavaIdentifierPart(text.charAt(offset - 1)))
+                && (end == text.length() || !Character.isJavaIdentifierPart(text.charAt(end)));
+    }
+
+    private static final class Candidate {
+        private final RefClass myRefClass;
+        private final PsiClass myClass;
+        private final String myName;
+
+        /**
+         * 类所在的模块，不在模块里为 null
+         */
+        @Nullable
+        private final Module myModule;
+
+        /**
+         * 已经找到用法，后面的文件不用再确认
+         */
+        private boolean myUsed;
+
+        private Candidate(@NotNull RefClass refClass, @NotNull PsiClass psiClass, @NotNull String name, @Nullable Module module) {
+            myRefClass = refClass;
+            myClass = psiClass;
+            myName = name;
+            myModule = module;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.GlobalInspectionTool;
+import com.intellij.codeInspection.ex.GlobalInspectionContextBase;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElementImpl;
+import com.intellij.codeInspection.reference.RefEntity;
+import com.intellij.codeInspection.reference.RefField;
+import com.intellij.codeInspection.reference.RefJavaElement;
+import com.intellij.codeInspection.reference.RefJavaElementImpl;
+import com.intellij.codeInspection.reference.RefJavaVisitor;
+import com.intellij.codeInspection.reference.RefMethod;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 一次检查里需要检查的 RefJavaElement（isToCheckMember），按类、方法、字段、其他分组
+ * <p>
+ * 重置可达性、各个阶段找可疑元素、刷新结果都只需要遍历这里，不用每次都把整个 RefManager 走一遍。
+ * 可达性只增不减的时候，已经可达的元素会在遍历时顺手从 live 数组里去掉，后面的遍历只看还可疑的；
+ * {@link #resetReachability} 之后所有元素重新变成可疑
+ * @author YellowTail
+ * @since 2020-12-24
+ */
+public class CandidateIndex {
+
+    private static final Key<CandidateIndex> KEY = Key.create("yellow.vo.candidate.index");
+
+    private final Kind myClasses;
+    private final Kind myMethods;
+    private final Kind myFields;
+
+    /**
+     * 参数之类的，只需要重置可达性，不会成为结果
+     */
+    private final RefJavaElementImpl[] myOthers;
+
+    private CandidateIndex(@NotNull Builder builder) {
+        myClasses = new Kind(builder.myClasses);
+        myMethods = new Kind(builder.myMethods);
+        myFields = new Kind(builder.myFields);
+        myOthers = builder.myOthers.toArray(new RefJavaElementImpl[0]);
+    }
+
+    /**
+     * 得到当前检查的候选索引，还没有的话遍历 RefManager 建立
+     * @param context 上下文
+     * @param tool 用来判断 isToCheckMember
+     * @return 索引
+     * @author YellowTail
+     * @since 2020-12-24
+     */
+    @NotNull
+    public static synchronized CandidateIndex getInstance(@NotNull GlobalInspectionContext context, @NotNull GlobalInspectionTool tool) {
+        CandidateIndex index = context.getUserData(KEY);
+        if (index == null) {
+            Builder builder = builder(context, tool);
+            context.getRefManager().iterate(new RefJavaVisitor() {
+                @Override
+                public void visitElement(@NotNull RefEntity refEntity) {
+                    builder.accept(refEntity);
+                }
+            });
+            index = builder.install();
+        }
+        return index;
+    }
+
+    /**
+     * 已经有遍历 RefManager 的地方（runInspection）可以顺便建立，不用再多走一遍
+     */
+    @NotNull
+    public static Builder builder(@NotNull GlobalInspectionContext context, @NotNull GlobalInspectionTool tool) {
+        return new Builder(context, tool);
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * 所有候选 setReachable(false)，之后所有类、方法、字段重新变成可疑
+     */
+    public synchronized void resetReachability() {
+        myClasses.reset();
+        myMethods.reset();
+        myFields.reset();
+        for (RefJavaElementImpl other : myOthers) {
+            other.setReachable(false);
+        }
+    }
+
+    /**
+     * 遍历还可疑的类、方法、字段，已经可达的顺手去掉
+     * <p>
+     * 只能在上一次 {@link #resetReachability} 之后可达性只增不减的时候用
+     * @param consumer 处理可疑元素
+     * @author YellowTail
+     * @since 2020-12-24
+     */
+    public synchronized void forEachSuspicious(@NotNull Consumer<? super RefJavaElement> consumer) {
+        myClasses.forEachSuspicious(consumer);
+        myMethods.forEachSuspicious(consumer);
+        myFields.forEachSuspicious(consumer);
+    }
+
+    /**
+     * 遍历所有候选里还可疑的类、方法、字段，不动 live 数组，结果显示这种只读的地方用
+     * @param consumer 处理可疑元素
+     * @author YellowTail
+     * @since 2020-12-30
+     */
+    public synchronized void peekSuspicious(@NotNull Consumer<? super RefJavaElement> consumer) {
+        myClasses.peekSuspicious(consumer);
+        myMethods.peekSuspicious(consumer);
+        myFields.peekSuspicious(consumer);
+    }
+
+    /**
+     * 一种元素的候选，live 数组的前 myLiveSize 个是还可疑的
+     */
+    private static final class Kind {
+        private final RefJavaElementImpl[] myAll;
+        private final RefJavaElementImpl[] myLive;
+        private int myLiveSize;
+
+        private Kind(@NotNull List<RefJavaElementImpl> elements) {
+            myAll = elements.toArray(new RefJavaElementImpl[0]);
+            myLive = myAll.clone();
+            myLiveSize = myLive.length;
+        }
+
+        private void reset() {
+            for (RefJavaElementImpl element : myAll) {
+                element.setReachable(false);
+            }
+            System.arraycopy(myAll, 0, myLive, 0, myAll.length);
+            myLiveSize = myAll.length;
+        }
+
+        private void forEachSuspicious(@NotNull Consumer<? super RefJavaElement> consumer) {
+            int size = 0;
+            for (int i = 0; i < myLiveSize; i++) {
+                RefJavaElementImpl element = myLive[i];
+                if (!((RefElementImpl) element).isSuspicious()) {
+                    continue;
+                }
+                myLive[size++] = element;
+                consumer.accept(element);
+            }
+            for (int i = size; i < myLiveSize; i++) {
+                myLive[i] = null;
+            }
+            myLiveSize = size;
+        }
+
+        private void peekSuspicious(@NotNull Consumer<? super RefJavaElement> consumer) {
+            for (RefJavaElementImpl element : myAll) {
+                if (((RefElementImpl) element).isSuspicious()) {
+                    consumer.accept(element);
+                }
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final GlobalInspectionContext myContext;
+        private final GlobalInspectionTool myTool;
+
+        private final List<RefJavaElementImpl> myClasses = new ArrayList<>();
+        private final List<RefJavaElementImpl> myMethods = new ArrayList<>();
+        private final List<RefJavaElementImpl> myFields = new ArrayList<>();
+        private final List<RefJavaElementImpl> myOthers = new ArrayList<>();
+
+        private Builder(@NotNull GlobalInspectionContext context, @NotNull GlobalInspectionTool tool) {
+            myContext = context;
+            myTool = tool;
+        }
+
+        public void accept(@NotNull RefEntity refEntity) {
+            if (!(refEntity instanceof RefJavaElementImpl)) {
+                return;
+            }
+            RefJavaElementImpl refElement = (RefJavaElementImpl) refEntity;
+            if (!((GlobalInspectionContextBase) myContext).isToCheckMember(refElement, myTool)) {
+                return;
+            }
+
+            if (refElement instanceof RefClass) {
+                myClasses.add(refElement);
+            } else if (refElement instanceof RefMethod) {
+                myMethods.add(refElement);
+            } else if (refElement instanceof RefField) {
+                myFields.add(refElement);
+            } else {
+                myOthers.add(refElement);
+            }
+        }
+
+        @NotNull
+        public CandidateIndex install() {
+            CandidateIndex index = new CandidateIndex(this);
+            synchronized (CandidateIndex.class) {
+                myContext.putUserData(KEY, index);
+            }
+            return index;
+        }
+    }
+}
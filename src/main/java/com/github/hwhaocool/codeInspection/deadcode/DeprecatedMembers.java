@@ -0,0 +1,141 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiCompiledElement;
+import com.intellij.psi.PsiDocCommentOwner;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiMember;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiSearchHelper;
+import com.intellij.psi.search.searches.AnnotatedElementsSearch;
+import com.intellij.psi.util.PsiUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * project 里所有 deprecated 的类、方法、字段，一次检查算一次
+ * <p>
+ * 带 @Deprecated 注解的用 AnnotatedElementsSearch 找；javadoc 里写 @deprecated 的，
+ * 先用词索引找出注释里有 deprecated 的文件，只在这些文件里按 stub 问 isDeprecated()，不用加载 AST。
+ * <p>
+ * 局部类、匿名类不在 stub 里，它们和不是当前 project 的 Java 源文件的元素一样，退回逐个判断
+ * @author YellowTail
+ * @since 2020-12-26
+ */
+public class DeprecatedMembers {
+    private static final Logger LOG = Logger.getInstance(DeprecatedMembers.class);
+
+    private static final Key<DeprecatedMembers> KEY = Key.create("yellow.vo.deprecated.members");
+
+    private final GlobalSearchScope myScope;
+
+    private final Set<PsiElement> myDeprecated = ContainerUtil.newIdentityTroveSet();
+
+    private DeprecatedMembers(@NotNull Project project) {
+        myScope = GlobalSearchScope.projectScope(project);
+
+        PsiClass deprecated = JavaPsiFacade.getInstance(project).findClass(Deprecated.class.getName(), GlobalSearchScope.allScope(project));
+        if (deprecated != null) {
+            myDeprecated.addAll(AnnotatedElementsSearch.searchElements(deprecated, myScope, PsiDocCommentOwner.class).findAll());
+        }
+
+        PsiSearchHelper.getInstance(project).processAllFilesWithWordInComments("deprecated", myScope, file -> {
+            if (file instanceof PsiJavaFile) {
+                collectJavadocDeprecated((PsiJavaFile) file);
+            }
+            return true;
+        });
+    }
+
+    @NotNull
+    public static synchronized DeprecatedMembers getInstance(@NotNull GlobalInspectionContext context) {
+        DeprecatedMembers members = context.getUserData(KEY);
+        if (members == null) {
+            long start = System.currentTimeMillis();
+            members = new DeprecatedMembers(context.getProject());
+            context.putUserData(KEY, members);
+
+            LOG.info(String.format("deprecated members: %d found in %d ms", members.myDeprecated.size(), System.currentTimeMillis() - start));
+        }
+        return members;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * 和 PsiDocCommentOwner.isDeprecated() 的结果一样
+     * @param element 元素
+     * @return 是不是 deprecated
+     * @author YellowTail
+     * @since 2020-12-26
+     */
+    public boolean isDeprecated(@NotNull PsiElement element) {
+        if (!(element instanceof PsiDocCommentOwner)) {
+            return false;
+        }
+        if (!isCovered(element)) {
+            return ((PsiDocCommentOwner) element).isDeprecated();
+        }
+        return myDeprecated.contains(element);
+    }
+
+    private void collectJavadocDeprecated(@NotNull PsiJavaFile file) {
+        ArrayDeque<PsiClass> classes = new ArrayDeque<>();
+        Collections.addAll(classes, file.getClasses());
+
+        while (!classes.isEmpty()) {
+            PsiClass psiClass = classes.pop();
+            addIfDeprecated(psiClass);
+            for (PsiDocCommentOwner member : psiClass.getMethods()) {
+                addIfDeprecated(member);
+            }
+            for (PsiDocCommentOwner member : psiClass.getFields()) {
+                addIfDeprecated(member);
+            }
+            Collections.addAll(classes, psiClass.getInnerClasses());
+        }
+    }
+
+    private void addIfDeprecated(@NotNull PsiDocCommentOwner owner) {
+        if (owner.isDeprecated()) {
+            myDeprecated.add(owner);
+        }
+    }
+
+    /**
+     * 当前 project 的 Java 源文件里、不在局部类和匿名类里的元素，才一定被上面两种方式找到过
+     */
+    private boolean isCovered(@NotNull PsiElement element) {
+        if (element instanceof PsiCompiledElement || !(element instanceof PsiMember)) {
+            return false;
+        }
+        PsiFile file = element.getContainingFile();
+        VirtualFile virtualFile = file instanceof PsiJavaFile ? file.getVirtualFile() : null;
+        if (virtualFile == null || !myScope.contains(virtualFile)) {
+            return false;
+        }
+
+        PsiClass psiClass = element instanceof PsiClass ? (PsiClass) element : ((PsiMember) element).getContainingClass();
+        while (psiClass != null) {
+            if (PsiUtil.isLocalOrAnonymousClass(psiClass)) {
+                return false;
+            }
+            psiClass = psiClass.getContainingClass();
+        }
+        return true;
+    }
+}
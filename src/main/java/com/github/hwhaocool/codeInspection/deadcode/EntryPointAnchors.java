@@ -0,0 +1,56 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 判断入口时要用的 Applet、Servlet 类，每个 project 只查一次
+ * <p>
+ * 缓存在 project 上，代码或者依赖（ProjectRootManager）有修改时失效
+ * @author YellowTail
+ * @since 2020-12-24
+ */
+public class EntryPointAnchors {
+
+    private static final Key<CachedValue<EntryPointAnchors>> KEY = Key.create("yellow.vo.entry.point.anchors");
+
+    @Nullable
+    private final PsiClass myApplet;
+
+    @Nullable
+    private final PsiClass myServlet;
+
+    private EntryPointAnchors(@NotNull Project project) {
+        JavaPsiFacade psiFacade = JavaPsiFacade.getInstance(project);
+        GlobalSearchScope scope = GlobalSearchScope.allScope(project);
+        myApplet = psiFacade.findClass("java.applet.Applet", scope);
+        myServlet = psiFacade.findClass("javax.servlet.Servlet", scope);
+    }
+
+    @NotNull
+    public static EntryPointAnchors getInstance(@NotNull Project project) {
+        return CachedValuesManager.getManager(project).getCachedValue(project, KEY,
+                () -> CachedValueProvider.Result.create(new EntryPointAnchors(project),
+                        PsiModificationTracker.MODIFICATION_COUNT, ProjectRootManager.getInstance(project)), false);
+    }
+
+    @Nullable
+    public PsiClass getApplet() {
+        return myApplet;
+    }
+
+    @Nullable
+    public PsiClass getServlet() {
+        return myServlet;
+    }
+}
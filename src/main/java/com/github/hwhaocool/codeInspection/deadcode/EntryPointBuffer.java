@@ -0,0 +1,75 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.ex.EntryPointsManager;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 外部使用搜索的回调里找到的临时入口先放在这里，计算可达性之前（checkForReachableRefs）一次性加到 EntryPointsManager
+ * <p>
+ * 回调可能在多个线程里同时执行，无锁队列加上去重集合，不用每次都去取 EntryPointsManager、抢它里面的锁；
+ * 同一个元素整次检查只会加一次
+ * @author YellowTail
+ * @since 2020-12-28
+ */
+public class EntryPointBuffer {
+
+    private static final Key<EntryPointBuffer> KEY = Key.create("yellow.vo.entry.point.buffer");
+
+    private final ConcurrentLinkedQueue<RefElement> myPending = new ConcurrentLinkedQueue<>();
+
+    private final Set<RefElement> myAdded = ConcurrentHashMap.newKeySet();
+
+    @NotNull
+    public static synchronized EntryPointBuffer getInstance(@NotNull GlobalInspectionContext context) {
+        EntryPointBuffer buffer = context.getUserData(KEY);
+        if (buffer == null) {
+            buffer = new EntryPointBuffer();
+            context.putUserData(KEY, buffer);
+        }
+        return buffer;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * 加一个临时入口，可以在任何线程调用
+     */
+    public void add(@NotNull RefElement element) {
+        if (myAdded.add(element)) {
+            myPending.add(element);
+        }
+    }
+
+    /**
+     * @return 这次检查里已经加过（不管有没有 flush）返回 true
+     */
+    public boolean contains(@NotNull RefElement element) {
+        return myAdded.contains(element);
+    }
+
+    /**
+     * 把攒下的临时入口加到 EntryPointsManager
+     * @param manager EntryPointsManager
+     * @return 这次加进去的数量
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    public int flush(@NotNull EntryPointsManager manager) {
+        int flushed = 0;
+        RefElement element;
+        while ((element = myPending.poll()) != null) {
+            manager.addEntryPoint(element, false);
+            flushed++;
+        }
+        return flushed;
+    }
+}
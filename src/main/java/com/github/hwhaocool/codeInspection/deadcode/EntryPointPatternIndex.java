@@ -0,0 +1,285 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInsight.ExternalAnnotationsManager;
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.ex.EntryPointsManager;
+import com.intellij.codeInspection.ex.EntryPointsManagerBase;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiCompiledElement;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiModifierListOwner;
+import com.intellij.psi.PsiPackage;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.searches.AnnotatedElementsSearch;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * EntryPointsManager 里配置的入口注解、入口类（Configure annotations / Configure classes），一次检查开始时一次性算好
+ * <p>
+ * 注解（用户配置的 ADDITIONAL_ANNOTATIONS 加上平台、扩展自带的那些）用 AnnotatedElementsSearch（走 stub 索引）
+ * 把 project 里带这些注解的元素都找出来放到集合里；javax.ws.rs.* 这种以 * 结尾的注解，先在对应的包里找出所有名字匹配的注解类，再逐个搜。
+ * classpath 里找不到的注解类不会出现在能编译的代码里，直接跳过。
+ * 类的 pattern 没有通配符（* 和 ?）的放到集合里，有通配符的合成一个正则。
+ * 之后判断一个元素只需要查集合、匹配一次正则，不用每个元素把所有注解、pattern 都试一遍。
+ * 索引在 runInspection 开始遍历之前建好，之后配置变了才重建。
+ * <p>
+ * 带方法名、按继承关系匹配的 pattern，* 不在结尾的注解，以及 Deprecated（还要看 javadoc）这几种情况索引算不准，
+ * 只要配置里有这几种，索引没命中的时候就退回 EntryPointsManager 原来的逐个判断；
+ * 不是当前 project 的 Java 源文件、或者有外部注解（annotations.xml）的文件也一样退回
+ * @author YellowTail
+ * @since 2020-12-25
+ */
+public class EntryPointPatternIndex {
+    private static final Logger LOG = Logger.getInstance(EntryPointPatternIndex.class);
+
+    private static final Key<EntryPointPatternIndex> KEY = Key.create("yellow.vo.entry.point.pattern.index");
+
+    private final EntryPointsManager myManager;
+
+    private final GlobalSearchScope myScope;
+
+    /**
+     * 算出这个索引时的配置，配置变了要重建
+     */
+    private final int mySignature;
+
+    /**
+     * 带入口注解的元素
+     */
+    private final Set<PsiElement> myAnnotated = ContainerUtil.newIdentityTroveSet();
+
+    /**
+     * 没有通配符的类 pattern
+     */
+    private final Set<String> myExactClasses = new HashSet<>();
+
+    /**
+     * 有通配符的类 pattern 合成的正则，没有的话为 null
+     */
+    @Nullable
+    private final Pattern myClassPattern;
+
+    /**
+     * 配置里有索引算不准的东西，没命中的时候要退回 EntryPointsManager
+     */
+    private final boolean myNeedsFallback;
+
+    private EntryPointPatternIndex(@NotNull Project project, @NotNull EntryPointsManagerBase manager, int signature) {
+        myManager = manager;
+        myScope = GlobalSearchScope.projectScope(project);
+        mySignature = signature;
+
+        boolean needsFallback = false;
+
+        JavaPsiFacade psiFacade = JavaPsiFacade.getInstance(project);
+        GlobalSearchScope allScope = GlobalSearchScope.allScope(project);
+        for (String annotation : annotationsOf(manager)) {
+            int star = annotation.indexOf('*');
+            if (star >= 0 && star != annotation.length() - 1 || Deprecated.class.getName().equals(annotation)) {
+                needsFallback = true;
+                continue;
+            }
+
+            List<PsiClass> annotationClasses = new ArrayList<>();
+            if (star < 0) {
+                ContainerUtil.addIfNotNull(annotationClasses, psiFacade.findClass(annotation, allScope));
+            } else {
+                collectAnnotationClasses(psiFacade, annotation.substring(0, star), allScope, annotationClasses);
+            }
+            for (PsiClass annotationClass : annotationClasses) {
+                myAnnotated.addAll(AnnotatedElementsSearch.searchElements(annotationClass, myScope, PsiModifierListOwner.class).findAll());
+            }
+        }
+
+        List<String> wildcards = new ArrayList<>();
+        for (EntryPointsManagerBase.ClassPattern pattern : manager.getPatterns()) {
+            if (!StringUtil.isEmpty(pattern.method) || pattern.hierarchically) {
+                needsFallback = true;
+                continue;
+            }
+            if (StringUtil.containsAnyChar(pattern.pattern, "*?")) {
+                wildcards.add(toRegex(pattern.pattern));
+            } else {
+                myExactClasses.add(pattern.pattern);
+            }
+        }
+        myClassPattern = wildcards.isEmpty() ? null : Pattern.compile(StringUtil.join(wildcards, "|"));
+        myNeedsFallback = needsFallback;
+    }
+
+    /**
+     * 得到当前检查的索引，第一次用或者配置变了的时候建立
+     * @param context 上下文
+     * @return 索引，EntryPointsManager 不是 EntryPointsManagerBase 的时候返回 null
+     * @author YellowTail
+     * @since 2020-12-25
+     */
+    @Nullable
+    public static synchronized EntryPointPatternIndex getInstance(@NotNull GlobalInspectionContext context) {
+        Project project = context.getProject();
+        EntryPointsManager manager = EntryPointsManager.getInstance(project);
+        if (!(manager instanceof EntryPointsManagerBase)) {
+            return null;
+        }
+
+        int signature = signatureOf((EntryPointsManagerBase) manager);
+        EntryPointPatternIndex index = context.getUserData(KEY);
+        if (index == null || index.mySignature != signature) {
+            long start = System.currentTimeMillis();
+            index = new EntryPointPatternIndex(project, (EntryPointsManagerBase) manager, signature);
+            context.putUserData(KEY, index);
+
+            LOG.info(String.format("entry point pattern index: %d annotated elements, %d exact classes, fallback %b, built in %d ms",
+                    index.myAnnotated.size(), index.myExactClasses.size(), index.myNeedsFallback, System.currentTimeMillis() - start));
+        }
+        return index;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * 和 EntryPointsManager.isEntryPoint(PsiElement) 的结果一样
+     * @param element 元素
+     * @return 是不是配置的入口
+     * @author YellowTail
+     * @since 2020-12-25
+     */
+    public boolean isEntryPoint(@NotNull PsiElement element) {
+        if (!isCovered(element)) {
+            return myManager.isEntryPoint(element);
+        }
+
+        if (myAnnotated.contains(element)) {
+            return true;
+        }
+        if (element instanceof PsiClass) {
+            String qualifiedName = ((PsiClass) element).getQualifiedName();
+            if (qualifiedName != null && (myExactClasses.contains(qualifiedName)
+                    || myClassPattern != null && myClassPattern.matcher(qualifiedName).matches())) {
+                return true;
+            }
+        }
+
+        return myNeedsFallback && myManager.isEntryPoint(element);
+    }
+
+    /**
+     * 只有当前 project 里、没有外部注解的 Java 源文件，索引才算得准
+     */
+    private boolean isCovered(@NotNull PsiElement element) {
+        if (!(element instanceof PsiModifierListOwner) || element instanceof PsiCompiledElement) {
+            return false;
+        }
+        PsiFile file = element.getContainingFile();
+        if (!(file instanceof PsiJavaFile)) {
+            return false;
+        }
+        VirtualFile virtualFile = file.getVirtualFile();
+        return virtualFile != null && myScope.contains(virtualFile)
+                && !ExternalAnnotationsManager.getInstance(element.getProject()).hasAnnotationRootsForFile(virtualFile);
+    }
+
+    boolean needsFallback() {
+        return myNeedsFallback;
+    }
+
+    /**
+     * 用户配置的注解和平台、扩展自带的注解，去掉重复的
+     */
+    @NotNull
+    private static Set<String> annotationsOf(@NotNull EntryPointsManagerBase manager) {
+        Set<String> annotations = new LinkedHashSet<>(manager.ADDITIONAL_ANNOTATIONS);
+        annotations.addAll(manager.getAdditionalAnnotations());
+        return annotations;
+    }
+
+    /**
+     * 和平台的 AnnotationUtil.checkAnnotatedUsingPatterns 一样，javax.ws.rs.* 匹配全名以 javax.ws.rs. 开头的注解，包括子包里的。
+     * 从前缀所在的包开始往下找，前缀不在任何包里（比如只有一个 *）的话什么都不找
+     * @param prefix * 前面的部分
+     * @param result 找到的注解类
+     */
+    private static void collectAnnotationClasses(@NotNull JavaPsiFacade psiFacade, @NotNull String prefix,
+                                                 @NotNull GlobalSearchScope scope, @NotNull List<PsiClass> result) {
+        int lastDot = prefix.lastIndexOf('.');
+        PsiPackage psiPackage = lastDot <= 0 ? null : psiFacade.findPackage(prefix.substring(0, lastDot));
+        if (psiPackage == null) {
+            return;
+        }
+
+        Deque<PsiPackage> packages = new ArrayDeque<>();
+        packages.push(psiPackage);
+        while (!packages.isEmpty()) {
+            PsiPackage current = packages.pop();
+            Deque<PsiClass> classes = new ArrayDeque<>(Arrays.asList(current.getClasses(scope)));
+            while (!classes.isEmpty()) {
+                PsiClass psiClass = classes.pop();
+                String qualifiedName = psiClass.getQualifiedName();
+                if (psiClass.isAnnotationType() && qualifiedName != null && qualifiedName.startsWith(prefix)) {
+                    result.add(psiClass);
+                }
+                Collections.addAll(classes, psiClass.getInnerClasses());
+            }
+            for (PsiPackage subPackage : current.getSubPackages(scope)) {
+                packages.push(subPackage);
+            }
+        }
+    }
+
+    private static int signatureOf(@NotNull EntryPointsManagerBase manager) {
+        int signature = annotationsOf(manager).hashCode();
+        for (EntryPointsManagerBase.ClassPattern pattern : manager.getPatterns()) {
+            signature = 31 * signature + Objects.hash(pattern.pattern, pattern.method, pattern.hierarchically);
+        }
+        return signature;
+    }
+
+    /**
+     * 和平台的 mask 一样，* 匹配任意个字符，? 匹配一个字符，其他的原样匹配：
+     * a.b.*Controller? -> \Qa.b.\E.*\QController\E.
+     */
+    @NotNull
+    private static String toRegex(@NotNull String wildcard) {
+        StringBuilder regex = new StringBuilder("(?:");
+        int literalStart = 0;
+        for (int i = 0; i < wildcard.length(); i++) {
+            char c = wildcard.charAt(i);
+            if (c != '*' && c != '?') {
+                continue;
+            }
+            if (i > literalStart) {
+                regex.append(Pattern.quote(wildcard.substring(literalStart, i)));
+            }
+            regex.append(c == '*' ? ".*" : ".");
+            literalStart = i + 1;
+        }
+        if (literalStart < wildcard.length()) {
+            regex.append(Pattern.quote(wildcard.substring(literalStart)));
+        }
+        return regex.append(')').toString();
+    }
+}
@@ -0,0 +1,69 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * 外部使用要搜的范围：project 的内容里，分析范围以外的文件，以及所有非 Java 文件
+ * <p>
+ * 分析范围内的 Java 文件里的引用已经在 RefManager 的图里了，不用再搜；
+ * 和 GlobalJavaInspectionContextImpl 处理 enqueue*Processor 时用的范围一样
+ * @author YellowTail
+ * @since 2020-12-27
+ */
+public class ExternalUsageScope extends GlobalSearchScope {
+
+    private static final Key<ExternalUsageScope> KEY = Key.create("yellow.vo.external.usage.scope");
+
+    @Nullable
+    private final AnalysisScope myAnalysisScope;
+
+    private final ProjectFileIndex myFileIndex;
+
+    private ExternalUsageScope(@NotNull Project project, @Nullable AnalysisScope analysisScope) {
+        super(project);
+        myAnalysisScope = analysisScope;
+        myFileIndex = ProjectFileIndex.getInstance(project);
+    }
+
+    @NotNull
+    public static synchronized ExternalUsageScope getInstance(@NotNull GlobalInspectionContext context) {
+        ExternalUsageScope scope = context.getUserData(KEY);
+        if (scope == null) {
+            scope = new ExternalUsageScope(context.getProject(), context.getRefManager().getScope());
+            context.putUserData(KEY, scope);
+        }
+        return scope;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    @Override
+    public boolean contains(@NotNull VirtualFile file) {
+        if (!myFileIndex.isInContent(file)) {
+            return false;
+        }
+        return myAnalysisScope != null && !myAnalysisScope.contains(file) || file.getFileType() != JavaFileType.INSTANCE;
+    }
+
+    @Override
+    public boolean isSearchInModuleContent(@NotNull Module aModule) {
+        return true;
+    }
+
+    @Override
+    public boolean isSearchInLibraries() {
+        return false;
+    }
+}
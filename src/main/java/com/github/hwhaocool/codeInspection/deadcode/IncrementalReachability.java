@@ -0,0 +1,93 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 跨阶段保留的可达性状态
+ * <p>
+ * queryExternalUsagesRequests 的每个阶段之间只会新增入口（临时入口），可达的元素只会变多，
+ * 所以不用每个阶段都把所有元素 setReachable(false) 再从所有入口重新遍历，
+ * 只需要让同一个 {@link ReachabilityEngine} 从上一阶段之后新增的入口继续标记
+ * @author YellowTail
+ * @since 2020-12-22
+ */
+public class IncrementalReachability {
+
+    private static final Key<IncrementalReachability> KEY = Key.create("yellow.vo.incremental.reachability");
+
+    private final ReachabilityEngine myEngine;
+
+    /**
+     * 已经交给引擎的入口
+     */
+    private final Set<RefElement> myScannedEntryPoints = new HashSet<>();
+
+    private IncrementalReachability(@NotNull ReachabilityEngine engine) {
+        myEngine = engine;
+    }
+
+    /**
+     * 用一个新的引擎重新开始，之前的状态作废
+     * @param context 上下文
+     * @param engine 新的引擎，所有元素都已经 setReachable(false)
+     * @return 新的状态
+     * @author YellowTail
+     * @since 2020-12-22
+     */
+    @NotNull
+    public static synchronized IncrementalReachability start(@NotNull GlobalInspectionContext context, @NotNull ReachabilityEngine engine) {
+        IncrementalReachability reachability = new IncrementalReachability(engine);
+        context.putUserData(KEY, reachability);
+        return reachability;
+    }
+
+    /**
+     * @return 当前的状态，还没有 {@link #start} 过返回 null
+     */
+    @Nullable
+    public static synchronized IncrementalReachability getInstance(@NotNull GlobalInspectionContext context) {
+        return context.getUserData(KEY);
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * 见 {@link ReachabilityEngine#isInstantiated}
+     */
+    public boolean isInstantiated(@NotNull RefClass refClass) {
+        return myEngine.isInstantiated(refClass);
+    }
+
+    /**
+     * 只把还没有扫描过的入口交给引擎
+     * @param entryPoints 当前所有的入口
+     * @return 这次新扫描的入口数量
+     * @author YellowTail
+     * @since 2020-12-22
+     */
+    public int scanNewEntryPoints(RefElement @NotNull [] entryPoints) {
+        List<RefElement> newEntryPoints = new ArrayList<>();
+        for (RefElement entryPoint : entryPoints) {
+            if (myScannedEntryPoints.add(entryPoint)) {
+                newEntryPoints.add(entryPoint);
+            }
+        }
+
+        if (!newEntryPoints.isEmpty()) {
+            myEngine.scan(newEntryPoints.toArray(new RefElement[0]));
+        }
+        return newEntryPoints.size();
+    }
+}
@@ -0,0 +1,214 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefMethod;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一次检查里方法的继承关系：每个方法往上最顶层的父方法（root），以及哪些 root 已经排队搜索过
+ * <p>
+ * 第一次用到一个方法时把它往上的方法都加进并查集，并查集的每个集合记着里面有哪些 root。
+ * 一个方法往上能走到的方法都在它的集合里，所以集合里只有一个 root 的时候，这个方法的 root 就是它，不用再走；
+ * 有多个 root（比如同时实现了两个接口）的才沿 getSuperMethods 往上算，算过的记住。
+ * <p>
+ * 同一个 root 的搜索结果整次检查都一样，所以每个 root 只排队搜索一次
+ * @author YellowTail
+ * @since 2020-12-28
+ */
+public class MethodHierarchyIndex {
+
+    private static final Key<MethodHierarchyIndex> KEY = Key.create("yellow.vo.method.hierarchy.index");
+
+    /**
+     * 并查集的父节点，集合的代表元素指向自己
+     */
+    private final Map<RefMethod, RefMethod> myParent = new HashMap<>();
+
+    /**
+     * 代表元素 -> 集合里的 root
+     */
+    private final Map<RefMethod, List<RefMethod>> myComponentRoots = new HashMap<>();
+
+    /**
+     * 有多个 root 的集合里，算过的方法 -> 它的 root
+     */
+    private final Map<RefMethod, List<RefMethod>> myRoots = new HashMap<>();
+
+    private final Set<RefMethod> myEnqueuedRoots = new HashSet<>();
+
+    /**
+     * 已经排队搜索过的方法，它们的直接子方法不用再处理
+     */
+    private final Set<RefMethod> mySearchedMethods = new HashSet<>();
+
+    @NotNull
+    public static synchronized MethodHierarchyIndex getInstance(@NotNull GlobalInspectionContext context) {
+        MethodHierarchyIndex index = context.getUserData(KEY);
+        if (index == null) {
+            index = new MethodHierarchyIndex();
+            context.putUserData(KEY, index);
+        }
+        return index;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * @param method 方法
+     * @return 往上最顶层的父方法，没有父方法的话就是自己
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    @NotNull
+    public synchronized List<RefMethod> getRootMethods(@NotNull RefMethod method) {
+        addWithSuperMethods(method);
+
+        List<RefMethod> componentRoots = myComponentRoots.get(find(method));
+        if (componentRoots.size() == 1) {
+            return componentRoots;
+        }
+        return computeRoots(method);
+    }
+
+    /**
+     * @return root 第一次排队的时候返回 true
+     */
+    public synchronized boolean markEnqueued(@NotNull RefMethod root) {
+        return myEnqueuedRoots.add(root);
+    }
+
+    /**
+     * 记下这个方法已经排队搜索过，代替原来把 getDerivedMethods() 整个加到已处理集合里
+     */
+    public synchronized void markSearched(@NotNull RefMethod method) {
+        mySearchedMethods.add(method);
+    }
+
+    /**
+     * @return 直接父方法里有已经排队搜索过的（也就是原来会被当作子方法跳过的）返回 true
+     */
+    public synchronized boolean isDerivedFromSearched(@NotNull RefMethod method) {
+        if (mySearchedMethods.isEmpty()) {
+            return false;
+        }
+        for (RefMethod superMethod : method.getSuperMethods()) {
+            if (mySearchedMethods.contains(superMethod)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addWithSuperMethods(@NotNull RefMethod method) {
+        if (myParent.containsKey(method)) {
+            return;
+        }
+
+        ArrayDeque<RefMethod> pending = new ArrayDeque<>();
+        makeSet(method);
+        pending.push(method);
+        while (!pending.isEmpty()) {
+            RefMethod current = pending.pop();
+            for (RefMethod superMethod : current.getSuperMethods()) {
+                if (!myParent.containsKey(superMethod)) {
+                    makeSet(superMethod);
+                    pending.push(superMethod);
+                }
+                union(current, superMethod);
+            }
+        }
+    }
+
+    private void makeSet(@NotNull RefMethod method) {
+        myParent.put(method, method);
+        myComponentRoots.put(method, method.getSuperMethods().isEmpty()
+                ? Collections.singletonList(method)
+                : Collections.emptyList());
+    }
+
+    @NotNull
+    private RefMethod find(@NotNull RefMethod method) {
+        RefMethod root = method;
+        RefMethod parent;
+        while ((parent = myParent.get(root)) != root) {
+            root = parent;
+        }
+        // 路径压缩
+        RefMethod current = method;
+        while (current != root) {
+            RefMethod next = myParent.get(current);
+            myParent.put(current, root);
+            current = next;
+        }
+        return root;
+    }
+
+    private void union(@NotNull RefMethod a, @NotNull RefMethod b) {
+        RefMethod rootA = find(a);
+        RefMethod rootB = find(b);
+        if (rootA == rootB) {
+            return;
+        }
+
+        List<RefMethod> rootsA = myComponentRoots.remove(rootA);
+        List<RefMethod> rootsB = myComponentRoots.remove(rootB);
+        // root 少的挂到 root 多的下面，少复制一些
+        if (rootsA.size() < rootsB.size()) {
+            RefMethod swap = rootA;
+            rootA = rootB;
+            rootB = swap;
+        }
+        myParent.put(rootB, rootA);
+        myComponentRoots.put(rootA, merge(rootsA, rootsB));
+    }
+
+    @NotNull
+    private static List<RefMethod> merge(@NotNull List<RefMethod> a, @NotNull List<RefMethod> b) {
+        if (a.isEmpty()) {
+            return b;
+        }
+        if (b.isEmpty()) {
+            return a;
+        }
+        List<RefMethod> merged = new ArrayList<>(a.size() + b.size());
+        merged.addAll(a);
+        merged.addAll(b);
+        return merged;
+    }
+
+    @NotNull
+    private List<RefMethod> computeRoots(@NotNull RefMethod method) {
+        List<RefMethod> cached = myRoots.get(method);
+        if (cached != null) {
+            return cached;
+        }
+
+        Collection<RefMethod> superMethods = method.getSuperMethods();
+        List<RefMethod> roots;
+        if (superMethods.isEmpty()) {
+            roots = Collections.singletonList(method);
+        } else {
+            Set<RefMethod> result = new LinkedHashSet<>();
+            for (RefMethod superMethod : superMethods) {
+                result.addAll(computeRoots(superMethod));
+            }
+            roots = new ArrayList<>(result);
+        }
+        myRoots.put(method, roots);
+        return roots;
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 模块的反向依赖闭包：哪些模块（直接或者间接）依赖了这个模块，也就是能引用到这个模块里的代码
+ * <p>
+ * 一次检查开始时把所有模块的依赖反过来建一张表，每个模块的闭包第一次用的时候算好记住。
+ * 依赖是不是 export、是不是 test 都不管，算出来的只会比实际能看到的多，不会少。
+ * 非 Java 文件里按全限定名的引用（反射）不受依赖限制，不要用这个来缩小
+ * @author YellowTail
+ * @since 2020-12-28
+ */
+public class ModuleDependents {
+    private static final Logger LOG = Logger.getInstance(ModuleDependents.class);
+
+    private static final Key<ModuleDependents> KEY = Key.create("yellow.vo.module.dependents");
+
+    private final ProjectFileIndex myFileIndex;
+
+    /**
+     * 模块 -> 直接依赖它的模块
+     */
+    private final Map<Module, List<Module>> myDirectDependents = new HashMap<>();
+
+    /**
+     * 模块 -> 反向依赖闭包（包括自己）
+     */
+    private final Map<Module, Set<Module>> myClosures = new ConcurrentHashMap<>();
+
+    private final Map<Module, GlobalSearchScope> myScopes = new ConcurrentHashMap<>();
+
+    private ModuleDependents(@NotNull Project project) {
+        myFileIndex = ProjectFileIndex.getInstance(project);
+        for (Module module : ModuleManager.getInstance(project).getModules()) {
+            for (Module dependency : ModuleRootManager.getInstance(module).getDependencies(true)) {
+                myDirectDependents.computeIfAbsent(dependency, key -> new ArrayList<>()).add(module);
+            }
+        }
+    }
+
+    @NotNull
+    public static synchronized ModuleDependents getInstance(@NotNull GlobalInspectionContext context) {
+        ModuleDependents dependents = context.getUserData(KEY);
+        if (dependents == null) {
+            long start = System.currentTimeMillis();
+            dependents = new ModuleDependents(context.getProject());
+            context.putUserData(KEY, dependents);
+
+            LOG.info(String.format("module dependents: %d modules with dependents, built in %d ms",
+                    dependents.myDirectDependents.size(), System.currentTimeMillis() - start));
+        }
+        return dependents;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * @param module 模块
+     * @return 能引用到这个模块的所有模块，包括自己
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    @NotNull
+    public Set<Module> getDependents(@NotNull Module module) {
+        return myClosures.computeIfAbsent(module, this::computeClosure);
+    }
+
+    /**
+     * from 模块里的代码能不能引用到 target 模块里的代码，不知道的时候返回 true
+     */
+    public boolean canReference(@Nullable Module from, @Nullable Module target) {
+        return from == null || target == null || getDependents(target).contains(from);
+    }
+
+    /**
+     * 把 scope 缩小到能引用到 file 所在模块的模块里，file 不在任何模块里的话不缩小
+     * @param scope 原来的范围
+     * @param file 声明所在的文件
+     * @return 缩小后的范围
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    @NotNull
+    public GlobalSearchScope restrict(@NotNull GlobalSearchScope scope, @Nullable VirtualFile file) {
+        Module module = file == null ? null : myFileIndex.getModuleForFile(file);
+        if (module == null) {
+            return scope;
+        }
+        return scope.intersectWith(myScopes.computeIfAbsent(module, key -> new ModuleSetScope(key.getProject(), getDependents(key), myFileIndex)));
+    }
+
+    /**
+     * 把 scope 缩小到能引用到任何一个 file 所在模块的模块里，有一个 file 不在任何模块里的话不缩小
+     * @param scope 原来的范围
+     * @param files 声明所在的文件，比如方法和它最顶层的父方法
+     * @return 缩小后的范围
+     * @author YellowTail
+     * @since 2020-12-30
+     */
+    @NotNull
+    public GlobalSearchScope restrict(@NotNull GlobalSearchScope scope, @NotNull Collection<VirtualFile> files) {
+        if (files.size() == 1) {
+            return restrict(scope, files.iterator().next());
+        }
+
+        Set<Module> modules = new HashSet<>();
+        for (VirtualFile file : files) {
+            Module module = file == null ? null : myFileIndex.getModuleForFile(file);
+            if (module == null) {
+                return scope;
+            }
+            modules.addAll(getDependents(module));
+        }
+        if (modules.isEmpty()) {
+            return scope;
+        }
+        Project project = modules.iterator().next().getProject();
+        return scope.intersectWith(new ModuleSetScope(project, modules, myFileIndex));
+    }
+
+    @Nullable
+    public Module getModule(@Nullable VirtualFile file) {
+        return file == null ? null : myFileIndex.getModuleForFile(file);
+    }
+
+    @NotNull
+    private Set<Module> computeClosure(@NotNull Module module) {
+        Set<Module> closure = new HashSet<>();
+        ArrayDeque<Module> queue = new ArrayDeque<>();
+        closure.add(module);
+        queue.add(module);
+        while (!queue.isEmpty()) {
+            for (Module dependent : myDirectDependents.getOrDefault(queue.poll(), Collections.emptyList())) {
+                if (closure.add(dependent)) {
+                    queue.add(dependent);
+                }
+            }
+        }
+        return closure;
+    }
+
+    /**
+     * 一组模块的内容
+     */
+    private static final class ModuleSetScope extends GlobalSearchScope {
+        private final Set<Module> myModules;
+        private final ProjectFileIndex myFileIndex;
+
+        private ModuleSetScope(@NotNull Project project, @NotNull Set<Module> modules, @NotNull ProjectFileIndex fileIndex) {
+            super(project);
+            myModules = modules;
+            myFileIndex = fileIndex;
+        }
+
+        @Override
+        public boolean contains(@NotNull VirtualFile file) {
+            Module module = myFileIndex.getModuleForFile(file);
+            return module != null && myModules.contains(module);
+        }
+
+        @Override
+        public boolean isSearchInModuleContent(@NotNull Module aModule) {
+            return myModules.contains(aModule);
+        }
+
+        @Override
+        public boolean isSearchInLibraries() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefElementImpl;
+import com.intellij.codeInspection.reference.RefEntity;
+import com.intellij.codeInspection.reference.RefField;
+import com.intellij.codeInspection.reference.RefMethod;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 并行版本的 CodeScanner（见 UnusedDeclarationInspectionBase），结果和串行版本一致
+ * <p>
+ * 入口分给单独的 ForkJoin 线程池（{@link ReachabilityPool}，不占用 commonPool），每个任务用自己的栈遍历，栈太大时再分一半出去；
+ * 调用线程的 ProgressIndicator 带到每个任务里，取消检查的时候遍历会停下来。
+ * 可达、已实例化、已处理的方法都记在按 {@link RefElementIndex} id 的 {@link AtomicBitSet} 里，
+ * 出边从 {@link RefGraphSnapshot} 的 int 数组里取，遍历时不写 RefElement，结束后一次性 setReachable。
+ * 多次 scan 之间状态保留，写回的只是这一次新变成可达的元素
+ * @author YellowTail
+ * @since 2020-12-21
+ */
+public class ParallelCodeScanner implements ReachabilityEngine {
+    private static final Logger LOG = Logger.getInstance(ParallelCodeScanner.class);
+
+    /**
+     * 一个任务最多直接处理的入口数量，多了就一分为二
+     */
+    private static final int SEEDS_PER_TASK = 64;
+
+    /**
+     * 任务自己的栈超过这个大小，并且线程池比较闲的时候，分一半出去
+     */
+    private static final int SPLIT_PENDING_SIZE = 512;
+
+    private final RefGraphSnapshot mySnapshot;
+
+    /**
+     * 调用 scan 的线程的 ProgressIndicator，任务在线程池里执行时带上
+     */
+    @Nullable
+    private ProgressIndicator myIndicator;
+
+    private final Marks myReachable;
+    private final Marks myInstantiatedClasses;
+    private final Marks myProcessedMethods;
+
+    /**
+     * 所属类还没有实例化的方法，类实例化的时候放出来
+     */
+    private final ConcurrentHashMap<RefClass, List<RefMethod>> myDelayedMethods = new ConcurrentHashMap<>();
+
+    /**
+     * 这一次 scan 新变成可达、还没有写回的元素
+     */
+    private final ConcurrentLinkedQueue<RefElement> myNewlyReachable = new ConcurrentLinkedQueue<>();
+
+    public ParallelCodeScanner(@NotNull RefGraphSnapshot snapshot) {
+        mySnapshot = snapshot;
+        RefElementIndex index = snapshot.getIndex();
+        myReachable = new Marks(index, myNewlyReachable);
+        myInstantiatedClasses = new Marks(index, null);
+        myProcessedMethods = new Marks(index, null);
+    }
+
+    /**
+     * 从入口开始标记可达的元素，结束后写回 RefElement
+     * @param entryPoints 入口
+     * @author YellowTail
+     * @since 2020-12-21
+     */
+    @Override
+    public void scan(RefElement @NotNull [] entryPoints) {
+        myIndicator = ProgressManager.getInstance().getProgressIndicator();
+        ReachabilityPool.getInstance().getPool().invoke(new ScanTask(entryPoints, 0, entryPoints.length));
+
+        writeBack();
+    }
+
+    private void writeBack() {
+        RefElement element;
+        while ((element = myNewlyReachable.poll()) != null) {
+            ((RefElementImpl) element).setReachable(true);
+        }
+    }
+
+    @Override
+    public boolean isInstantiated(@NotNull RefClass refClass) {
+        return myInstantiatedClasses.isMarked(refClass);
+    }
+
+    private boolean isClassInstantiated(@Nullable RefClass refClass) {
+        return refClass == null || refClass.isUtilityClass() || myInstantiatedClasses.isMarked(refClass);
+    }
+
+    private final class ScanTask extends RecursiveAction {
+        private final RefElement[] mySeeds;
+        private final int myFrom;
+        private final int myTo;
+
+        private final ArrayDeque<RefElement> myPending = new ArrayDeque<>();
+        private final List<ScanTask> myForked = new ArrayList<>();
+
+        private ScanTask(RefElement[] seeds, int from, int to) {
+            mySeeds = seeds;
+            myFrom = from;
+            myTo = to;
+        }
+
+        @Override
+        protected void compute() {
+            ProgressIndicator indicator = myIndicator;
+            if (indicator != null && ProgressManager.getInstance().getProgressIndicator() != indicator) {
+                ProgressManager.getInstance().executeProcessUnderProgress(this::scan, indicator);
+            } else {
+                scan();
+            }
+        }
+
+        private void scan() {
+            if (myTo - myFrom > SEEDS_PER_TASK) {
+                int middle = (myFrom + myTo) >>> 1;
+                invokeAll(new ScanTask(mySeeds, myFrom, middle), new ScanTask(mySeeds, middle, myTo));
+                return;
+            }
+
+            for (int i = myFrom; i < myTo; i++) {
+                myPending.push(mySeeds[i]);
+            }
+
+            while (!myPending.isEmpty()) {
+                ProgressManager.checkCanceled();
+                if (myPending.size() > SPLIT_PENDING_SIZE && ForkJoinTask.getSurplusQueuedTaskCount() < 2) {
+                    splitPending();
+                }
+                visit(myPending.pop());
+            }
+
+            for (ScanTask task : myForked) {
+                task.join();
+            }
+        }
+
+        private void splitPending() {
+            RefElement[] half = new RefElement[myPending.size() / 2];
+            for (int i = 0; i < half.length; i++) {
+                half[i] = myPending.pollLast();
+            }
+            ScanTask task = new ScanTask(half, 0, half.length);
+            task.fork();
+            myForked.add(task);
+        }
+
+        /**
+         * 和 RefJavaVisitor 的 accept 分派一样，只关心方法、类、字段
+         */
+        private void visit(@NotNull RefElement element) {
+            if (element instanceof RefMethod) {
+                visitMethod((RefMethod) element);
+            } else if (element instanceof RefClass) {
+                visitClass((RefClass) element);
+            } else if (element instanceof RefField) {
+                visitField((RefField) element);
+            }
+        }
+
+        private void visitMethod(@NotNull RefMethod method) {
+            if (myProcessedMethods.isMarked(method)) {
+                return;
+            }
+
+            if (method.isStatic() || method.isConstructor() || method.isEntry()) {
+                if (!myProcessedMethods.mark(method)) {
+                    // 别的线程已经在处理了
+                    return;
+                }
+                if (method.isStatic()) {
+                    RefEntity owner = method.getOwner();
+                    if (owner instanceof RefElement) {
+                        myReachable.mark((RefElement) owner);
+                    }
+                } else {
+                    RefClass ownerClass = method.getOwnerClass();
+                    if (ownerClass != null) {
+                        addInstantiatedClass(ownerClass);
+                    } else {
+                        LOG.error("owner class is null for " + method.getPsiElement()
+                                + " is static ? " + method.isStatic()
+                                + "; is abstract ? " + method.isAbstract()
+                                + "; is main method ? " + method.isAppMain()
+                                + "; is constructor " + method.isConstructor());
+                    }
+                }
+                makeContentReachable(method);
+                makeClassInitializersReachable(method.getOwnerClass());
+            } else {
+                RefClass ownerClass = method.getOwnerClass();
+                if (isClassInstantiated(ownerClass)) {
+                    if (myProcessedMethods.mark(method)) {
+                        makeContentReachable(method);
+                    }
+                } else {
+                    addDelayedMethod(ownerClass, method);
+                }
+
+                myPending.addAll(method.getDerivedMethods());
+            }
+        }
+
+        private void visitClass(@NotNull RefClass refClass) {
+            if (myReachable.mark(refClass)) {
+                // Process class's static initializers.
+                makeClassInitializersReachable(refClass);
+            }
+
+            addInstantiatedClass(refClass);
+        }
+
+        private void visitField(@NotNull RefField field) {
+            if (myReachable.mark(field)) {
+                mySnapshot.forEachOutReference(field, myPending::addLast);
+                makeClassInitializersReachable(field.getOwnerClass());
+            }
+        }
+
+        private void addInstantiatedClass(@NotNull RefClass refClass) {
+            ArrayDeque<RefClass> classes = new ArrayDeque<>();
+            classes.push(refClass);
+
+            while (!classes.isEmpty()) {
+                RefClass instantiated = classes.pop();
+
+                // 先标记实例化，再取延迟方法，和 addDelayedMethod 配合保证不会漏掉
+                if (myInstantiatedClasses.mark(instantiated)) {
+                    myReachable.mark(instantiated);
+                    myPending.addAll(instantiated.getLibraryMethods());
+
+                    List<RefMethod> delayed = myDelayedMethods.remove(instantiated);
+                    if (delayed != null) {
+                        myPending.addAll(delayed);
+                    }
+
+                    for (RefClass baseClass : instantiated.getBaseClasses()) {
+                        classes.push(baseClass);
+                    }
+                }
+            }
+        }
+
+        private void addDelayedMethod(@NotNull RefClass ownerClass, @NotNull RefMethod method) {
+            boolean[] instantiated = {false};
+            myDelayedMethods.compute(ownerClass, (refClass, methods) -> {
+                // 放进去之前类刚好被别的线程实例化了，就不用延迟了
+                if (myInstantiatedClasses.isMarked(refClass)) {
+                    instantiated[0] = true;
+                    return methods;
+                }
+                List<RefMethod> result = methods == null ? new ArrayList<>() : methods;
+                result.add(method);
+                return result;
+            });
+
+            if (instantiated[0] && myProcessedMethods.mark(method)) {
+                makeContentReachable(method);
+            }
+        }
+
+        private void makeContentReachable(@NotNull RefElement refElement) {
+            myReachable.mark(refElement);
+            mySnapshot.forEachOutReference(refElement, myPending::addLast);
+        }
+
+        private void makeClassInitializersReachable(@Nullable RefClass refClass) {
+            if (refClass != null) {
+                mySnapshot.forEachOutReference(refClass, myPending::addLast);
+            }
+        }
+    }
+
+    /**
+     * 按 id 记在 bitset 里，建索引之后才出现的元素放到并发集合里
+     */
+    private static final class Marks {
+        private final RefElementIndex myIndex;
+        private final AtomicBitSet myBits;
+        private final Set<RefElement> myUnindexed = ConcurrentHashMap.newKeySet();
+
+        /**
+         * 新标记上的元素放到这里，可以为 null
+         */
+        private final ConcurrentLinkedQueue<RefElement> myNewlyMarked;
+
+        private Marks(@NotNull RefElementIndex index, @Nullable ConcurrentLinkedQueue<RefElement> newlyMarked) {
+            myIndex = index;
+            myBits = new AtomicBitSet(index.size());
+            myNewlyMarked = newlyMarked;
+        }
+
+        /**
+         * @return 这一次标记上的返回 true，已经标记过返回 false
+         */
+        private boolean mark(@NotNull RefElement element) {
+            int id = myIndex.idOf(element);
+            boolean marked = id < 0 ? myUnindexed.add(element) : myBits.set(id);
+            if (marked && myNewlyMarked != null) {
+                myNewlyMarked.add(element);
+            }
+            return marked;
+        }
+
+        private boolean isMarked(@NotNull RefElement element) {
+            int id = myIndex.idOf(element);
+            return id < 0 ? myUnindexed.contains(element) : myBits.get(id);
+        }
+    }
+}
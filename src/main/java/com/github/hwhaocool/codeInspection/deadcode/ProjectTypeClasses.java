@@ -0,0 +1,156 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiArrayType;
+import com.intellij.psi.PsiCapturedWildcardType;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassType;
+import com.intellij.psi.PsiCompiledElement;
+import com.intellij.psi.PsiDisjunctionType;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiIntersectionType;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiParameter;
+import com.intellij.psi.PsiType;
+import com.intellij.psi.PsiTypeParameter;
+import com.intellij.psi.PsiWildcardType;
+import com.intellij.psi.util.CachedValue;
+import com.intellij.psi.util.CachedValueProvider;
+import com.intellij.psi.util.CachedValuesManager;
+import com.intellij.psi.util.PsiModificationTracker;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 把一个类型展开，得到类型树里所有当前 project 的类
+ * <p>
+ * 比如 Map&lt;String, List&lt;Foo&gt;&gt;、Foo[]、List&lt;? extends Foo&gt;、T extends Foo 都能得到 Foo，
+ * 字段的结果按 PsiField 缓存，代码有修改（PsiModificationTracker）时失效
+ * @author YellowTail
+ * @since 2020-12-17
+ */
+public class ProjectTypeClasses {
+
+    private static final Key<CachedValue<List<PsiClass>>> FIELD_TYPE_CLASSES_KEY = Key.create("yellow.vo.field.type.classes");
+    private static final Key<CachedValue<List<PsiClass>>> RETURN_TYPE_CLASSES_KEY = Key.create("yellow.vo.return.type.classes");
+    private static final Key<CachedValue<List<PsiClass>>> PARAMETER_TYPE_CLASSES_KEY = Key.create("yellow.vo.parameter.type.classes");
+
+    private ProjectTypeClasses() {
+    }
+
+    /**
+     * 得到字段类型里所有当前 project 的类，带缓存
+     * @param field 字段
+     * @return 类型树里的类，包括字段本身的类型
+     * @author YellowTail
+     * @since 2020-12-17
+     */
+    @NotNull
+    public static List<PsiClass> ofField(@NotNull PsiField field) {
+        return CachedValuesManager.getCachedValue(field, FIELD_TYPE_CLASSES_KEY,
+                () -> CachedValueProvider.Result.create(collect(field.getType()), PsiModificationTracker.MODIFICATION_COUNT));
+    }
+
+    /**
+     * 得到方法返回值类型里所有当前 project 的类，带缓存
+     * @param method 方法
+     * @return 类型树里的类
+     * @author YellowTail
+     * @since 2020-12-18
+     */
+    @NotNull
+    public static List<PsiClass> ofReturnType(@NotNull PsiMethod method) {
+        return CachedValuesManager.getCachedValue(method, RETURN_TYPE_CLASSES_KEY,
+                () -> CachedValueProvider.Result.create(collect(method.getReturnType()), PsiModificationTracker.MODIFICATION_COUNT));
+    }
+
+    /**
+     * 得到方法所有参数类型里当前 project 的类，带缓存
+     * @param method 方法
+     * @return 类型树里的类
+     * @author YellowTail
+     * @since 2020-12-18
+     */
+    @NotNull
+    public static List<PsiClass> ofParameters(@NotNull PsiMethod method) {
+        return CachedValuesManager.getCachedValue(method, PARAMETER_TYPE_CLASSES_KEY, () -> {
+            Set<PsiClass> classes = new LinkedHashSet<>();
+            for (PsiParameter parameter : method.getParameterList().getParameters()) {
+                classes.addAll(collect(parameter.getType()));
+            }
+            List<PsiClass> result = classes.isEmpty() ? Collections.emptyList() : new ArrayList<>(classes);
+            return CachedValueProvider.Result.create(result, PsiModificationTracker.MODIFICATION_COUNT);
+        });
+    }
+
+    /**
+     * 展开类型，没有缓存
+     * @param type 类型
+     * @return 类型树里的类
+     * @author YellowTail
+     * @since 2020-12-17
+     */
+    @NotNull
+    public static List<PsiClass> collect(@Nullable PsiType type) {
+        if (type == null) {
+            return Collections.emptyList();
+        }
+
+        Set<PsiClass> classes = new LinkedHashSet<>();
+
+        // T extends Comparable<T> 这种会绕回来，类型参数只展开一次
+        Set<PsiTypeParameter> typeParameters = new HashSet<>();
+
+        ArrayDeque<PsiType> types = new ArrayDeque<>();
+        types.push(type);
+
+        while (!types.isEmpty()) {
+            PsiType current = types.pop();
+
+            if (current instanceof PsiArrayType) {
+                types.push(((PsiArrayType) current).getComponentType());
+            } else if (current instanceof PsiCapturedWildcardType) {
+                types.push(((PsiCapturedWildcardType) current).getWildcard());
+            } else if (current instanceof PsiWildcardType) {
+                PsiType bound = ((PsiWildcardType) current).getBound();
+                if (bound != null) {
+                    types.push(bound);
+                }
+            } else if (current instanceof PsiIntersectionType) {
+                pushAll(types, ((PsiIntersectionType) current).getConjuncts());
+            } else if (current instanceof PsiDisjunctionType) {
+                types.addAll(((PsiDisjunctionType) current).getDisjunctions());
+            } else if (current instanceof PsiClassType) {
+                PsiClassType classType = (PsiClassType) current;
+                PsiClass psiClass = classType.resolve();
+
+                if (psiClass instanceof PsiTypeParameter) {
+                    if (typeParameters.add((PsiTypeParameter) psiClass)) {
+                        pushAll(types, psiClass.getExtendsListTypes());
+                    }
+                } else if (psiClass != null && !(psiClass instanceof PsiCompiledElement)) {
+                    // 编译好的类（jdk、jar 包）不是当前 project 的
+                    classes.add(psiClass);
+                }
+
+                pushAll(types, classType.getParameters());
+            }
+        }
+
+        return classes.isEmpty() ? Collections.emptyList() : new ArrayList<>(classes);
+    }
+
+    private static void pushAll(ArrayDeque<PsiType> types, PsiType[] array) {
+        for (PsiType psiType : array) {
+            types.push(psiType);
+        }
+    }
+}
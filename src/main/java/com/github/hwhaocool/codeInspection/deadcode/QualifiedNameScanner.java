@@ -0,0 +1,228 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.fileEditor.impl.LoadTextUtil;
+import com.intellij.openapi.fileTypes.FileType;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.util.io.FileUtilRt;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.encoding.EncodingRegistry;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.util.ClassUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.uast.UClass;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 一次性找出一批类的全限定名有没有在非 Java 文件里出现，代替每个类一次 enqueueQualifiedNameOccurrencesProcessor
+ * <p>
+ * 所有候选类的全限定名（a.b.Outer.Inner 和 a.b.Outer$Inner 两种写法）建成一个 {@link AhoCorasick}，
+ * 外部范围（{@link ExternalUsageScope}）里的每个非 Java 文件按字节读一遍就能找出所有出现的类名，
+ * 比如 MyBatis 的 XML、Spring 的 yaml、properties。和平台的索引一样，太大的文件（{@link FileUtilRt#LARGE_FOR_CONTENT_LOADING}）不读。
+ * <p>
+ * 前后是标识符字符的不算（a.b.Foo 不算在 a.b.FooBar 里出现），Kotlin 之类的代码文件整个文件都会被搜，
+ * 比原来只搜注释、字符串要宽一些，只会多算出现，不会漏
+ * @author YellowTail
+ * @since 2020-12-28
+ */
+public class QualifiedNameScanner {
+    private static final Logger LOG = Logger.getInstance(QualifiedNameScanner.class);
+
+    private static final String ASCII_PROBE = "azAZ09._$";
+
+    private final GlobalInspectionContext myContext;
+
+    /**
+     * 全限定名 -> 类，不同模块里可能有同名的类
+     */
+    private final Map<String, List<RefClass>> myClassesByName = new LinkedHashMap<>();
+
+    private final Set<RefClass> myAdded = new HashSet<>();
+
+    public QualifiedNameScanner(@NotNull GlobalInspectionContext context) {
+        myContext = context;
+    }
+
+    /**
+     * 需要在读锁里调用
+     */
+    public void add(@NotNull RefClass refClass) {
+        if (!myAdded.add(refClass)) {
+            return;
+        }
+        UClass uClass = refClass.getUastElement();
+        PsiClass psiClass = uClass == null ? null : uClass.getJavaPsi();
+        if (psiClass == null) {
+            return;
+        }
+
+        String qualifiedName = psiClass.getQualifiedName();
+        if (qualifiedName == null) {
+            return;
+        }
+        addName(qualifiedName, refClass);
+
+        String binaryName = ClassUtil.getJVMClassName(psiClass);
+        if (binaryName != null && !binaryName.equals(qualifiedName)) {
+            addName(binaryName, refClass);
+        }
+    }
+
+    private void addName(@NotNull String name, @NotNull RefClass refClass) {
+        myClassesByName.computeIfAbsent(name, key -> new ArrayList<>(1)).add(refClass);
+    }
+
+    public boolean isEmpty() {
+        return myClassesByName.isEmpty();
+    }
+
+    /**
+     * 扫描外部范围里的所有非 Java 文件，全限定名出现过的类交给 onFound（在读锁里调用）
+     * @param onFound 处理全限定名出现过的类
+     * @param budget 时间预算，这一轮时间用完的话剩下的文件不扫了，还没找到的类都当作出现过
+     * @return 全限定名出现过的类的数量
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    public int run(@NotNull Consumer<RefClass> onFound, @NotNull SearchBudget budget) {
+        long start = System.currentTimeMillis();
+
+        List<String> names = new ArrayList<>(myClassesByName.keySet());
+        List<byte[]> patterns = new ArrayList<>(names.size());
+        for (String name : names) {
+            patterns.add(name.getBytes(StandardCharsets.UTF_8));
+        }
+        AhoCorasick automaton = new AhoCorasick(patterns);
+
+        ExternalUsageScope scope = ExternalUsageScope.getInstance(myContext);
+        List<VirtualFile> files = new ArrayList<>();
+        ProjectFileIndex.getInstance(myContext.getProject()).iterateContent(file -> {
+            if (!file.isDirectory() && scope.contains(file)) {
+                FileType fileType = file.getFileType();
+                if (fileType != JavaFileType.INSTANCE && !fileType.isBinary()) {
+                    files.add(file);
+                }
+            }
+            return true;
+        });
+
+        boolean[] found = new boolean[names.size()];
+        long bytes = 0;
+        int scanned = 0;
+        for (VirtualFile file : files) {
+            ProgressManager.checkCanceled();
+            if (budget.isExpired()) {
+                break;
+            }
+            scanned++;
+            ByteBuffer buffer = load(file);
+            if (buffer == null) {
+                continue;
+            }
+            bytes += buffer.remaining();
+            automaton.search(buffer, (pattern, from, to) -> {
+                if (!found[pattern] && isWholeName(buffer, from, to)) {
+                    found[pattern] = true;
+                }
+                return true;
+            });
+        }
+
+        Set<RefClass> foundClasses = new LinkedHashSet<>();
+        for (int i = 0; i < names.size(); i++) {
+            if (found[i]) {
+                foundClasses.addAll(myClassesByName.get(names.get(i)));
+            }
+        }
+
+        int conceded = 0;
+        if (scanned < files.size()) {
+            // 没扫完不知道有没有出现，宁放过，勿杀错
+            for (List<RefClass> classes : myClassesByName.values()) {
+                for (RefClass refClass : classes) {
+                    if (foundClasses.add(refClass)) {
+                        conceded++;
+                    }
+                }
+            }
+            RunStatistics.getInstance(myContext).add("elements conceded by time budget", conceded);
+        }
+        myClassesByName.clear();
+
+        ReadAction.run(() -> foundClasses.forEach(onFound));
+
+        LOG.info(String.format("qualified name scan: %d names, %d of %d files, %d KB, %d classes found, %d conceded by time budget, %d ms",
+                names.size(), scanned, files.size(), bytes / 1024, foundClasses.size(), conceded, System.currentTimeMillis() - start));
+        return foundClasses.size();
+    }
+
+    /**
+     * 读出文件内容：没保存的用编辑器里的文本，兼容 ASCII 编码的直接用原始字节，其他的解码之后转成 UTF-8
+     * @return 读不了或者文件太大返回 null
+     */
+    @Nullable
+    private static ByteBuffer load(@NotNull VirtualFile file) {
+        if (file.getLength() > FileUtilRt.LARGE_FOR_CONTENT_LOADING) {
+            return null;
+        }
+        try {
+            FileDocumentManager documentManager = FileDocumentManager.getInstance();
+            if (documentManager.isFileModified(file)) {
+                Document document = ReadAction.compute(() -> documentManager.getCachedDocument(file));
+                if (document != null) {
+                    return ByteBuffer.wrap(ReadAction.compute(() -> document.getText()).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            if (!isAsciiCompatible(file.getCharset())) {
+                String text = ReadAction.compute(() -> LoadTextUtil.loadText(file).toString());
+                return ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8));
+            }
+
+            return ByteBuffer.wrap(file.contentsToByteArray());
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("can not read " + file.getPath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 全限定名里只有 ASCII 字符，ASCII 字符在这种编码里字节不变的话可以直接按字节搜
+     */
+    private static boolean isAsciiCompatible(@Nullable Charset charset) {
+        if (charset == null) {
+            charset = EncodingRegistry.getInstance().getDefaultCharset();
+        }
+        return Arrays.equals(ASCII_PROBE.getBytes(charset), ASCII_PROBE.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static boolean isWholeName(@NotNull ByteBuffer buffer, int from, int to) {
+        return (from == buffer.position() || !isIdentifierByte(buffer.get(from - 1)))
+                && (to == buffer.limit() || !isIdentifierByte(buffer.get(to)));
+    }
+
+    private static boolean isIdentifierByte(byte b) {
+        return b >= 'a' && b <= 'z' || b >= 'A' && b <= 'Z' || b >= '0' && b <= '9' || b == '_' || b == '$';
+    }
+}
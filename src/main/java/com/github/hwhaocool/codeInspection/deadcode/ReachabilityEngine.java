@@ -0,0 +1,32 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElement;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 从入口开始标记可达元素的引擎
+ * <p>
+ * 引擎是有状态的：多次调用 {@link #scan} 时，之前标记的结果保留，只从新的入口继续往下标记
+ * @author YellowTail
+ * @since 2020-12-22
+ */
+public interface ReachabilityEngine {
+
+    /**
+     * 从 entryPoints 开始标记，直到没有新的可达元素
+     * @param entryPoints 入口
+     * @author YellowTail
+     * @since 2020-12-22
+     */
+    void scan(RefElement @NotNull [] entryPoints);
+
+    /**
+     * 只从 static 成员可达的类没有实例化，它的实例方法还在等着；标成入口会把它实例化，结果不一样
+     * @param refClass 类
+     * @return 到目前为止 scan 过的入口已经让这个类实例化了返回 true
+     * @author YellowTail
+     * @since 2020-12-30
+     */
+    boolean isInstantiated(@NotNull RefClass refClass);
+}
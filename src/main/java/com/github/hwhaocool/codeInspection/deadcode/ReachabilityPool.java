@@ -0,0 +1,51 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * {@link ParallelCodeScanner} 专用的线程池，application 级别的 service
+ * <p>
+ * 第一次用的时候才创建；插件卸载、IDE 退出时 service 被 dispose，线程池跟着关掉，线程不会留下来
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class ReachabilityPool implements Disposable {
+
+    private ForkJoinPool myPool;
+
+    private boolean myDisposed;
+
+    @NotNull
+    public static ReachabilityPool getInstance() {
+        return ServiceManager.getService(ReachabilityPool.class);
+    }
+
+    @NotNull
+    public synchronized ForkJoinPool getPool() {
+        if (myDisposed) {
+            throw new IllegalStateException("ReachabilityPool is already disposed");
+        }
+        if (myPool == null) {
+            myPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("Yellow VO Reachability " + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return myPool;
+    }
+
+    @Override
+    public synchronized void dispose() {
+        myDisposed = true;
+        if (myPool != null) {
+            myPool.shutdownNow();
+            myPool = null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.psi.PsiAnnotation;
+import com.intellij.psi.PsiAnnotationMemberValue;
+import com.intellij.psi.PsiArrayInitializerMemberValue;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassObjectAccessExpression;
+import com.intellij.psi.PsiModifierList;
+import com.intellij.psi.PsiModifierListOwner;
+import com.intellij.psi.PsiNameValuePair;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * 通过注解里声明的类 递归设置 Reachable
+ * <p>
+ * 比如 {@code @JsonSubTypes(@JsonSubTypes.Type(Foo.class))}、{@code @JsonDeserialize(as = Foo.class)}，
+ * 类、字段、方法上的注解都算
+ * @author YellowTail
+ * @since 2020-12-18
+ */
+public class RecursionAnnotation implements RecursionEdgeProvider {
+
+    @Override
+    public void collectEdges(@NotNull GlobalInspectionContext globalContext, @NotNull RefClass refClass, @NotNull Consumer<RefClass> edges) {
+        PsiClass psiClass = psiClassOf(refClass);
+        if (psiClass == null) {
+            return;
+        }
+
+        List<PsiModifierListOwner> owners = new ArrayList<>();
+        owners.add(psiClass);
+        Collections.addAll(owners, psiClass.getFields());
+        Collections.addAll(owners, psiClass.getMethods());
+
+        Set<PsiClass> classes = new LinkedHashSet<>();
+        for (PsiModifierListOwner owner : owners) {
+            collectAnnotationClasses(owner.getModifierList(), classes);
+        }
+
+        acceptClasses(globalContext, classes, edges);
+    }
+
+    /**
+     * 找出注解参数里的 Foo.class，数组和嵌套的注解也会展开
+     */
+    private static void collectAnnotationClasses(@Nullable PsiModifierList modifierList, @NotNull Set<PsiClass> classes) {
+        if (modifierList == null) {
+            return;
+        }
+
+        ArrayDeque<PsiAnnotationMemberValue> values = new ArrayDeque<>();
+        for (PsiAnnotation annotation : modifierList.getAnnotations()) {
+            values.push(annotation);
+        }
+
+        while (!values.isEmpty()) {
+            PsiAnnotationMemberValue value = values.pop();
+
+            if (value instanceof PsiClassObjectAccessExpression) {
+                classes.addAll(ProjectTypeClasses.collect(((PsiClassObjectAccessExpression) value).getOperand().getType()));
+            } else if (value instanceof PsiArrayInitializerMemberValue) {
+                for (PsiAnnotationMemberValue initializer : ((PsiArrayInitializerMemberValue) value).getInitializers()) {
+                    values.push(initializer);
+                }
+            } else if (value instanceof PsiAnnotation) {
+                for (PsiNameValuePair attribute : ((PsiAnnotation) value).getParameterList().getAttributes()) {
+                    PsiAnnotationMemberValue attributeValue = attribute.getValue();
+                    if (attributeValue != null) {
+                        values.push(attributeValue);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 把所有 {@link RecursionEdgeProvider} 串起来递归设置 Reachable
+ * <p>
+ * 每个 RefClass 出队一次，所有 provider 在这一次里依次给出边，是一次融合的遍历，
+ * 而不是每个 provider 各遍历一遍
+ * @author YellowTail
+ * @since 2020-12-18
+ */
+public class RecursionChain implements RecursionReachable {
+
+    @Override
+    public void setReachable(final GlobalInspectionContext globalContext, final RefClass refClass, final Set<RefClass> processedRefclass) {
+
+        List<RecursionEdgeProvider> providers = RecursionEdgeProvider.EP_NAME.getExtensionList();
+
+        // 直接用到的类，之前只作为父类型到达过也要带上子类
+        RefClassHierarchy hierarchy = RefClassHierarchy.getInstance(globalContext);
+        hierarchy.markReachedDirectly(refClass);
+
+        ArrayDeque<RefClass> worklist = new ArrayDeque<>();
+        worklist.push(refClass);
+
+        EdgeSink sink = new EdgeSink(globalContext, hierarchy, processedRefclass, worklist);
+
+        while (!worklist.isEmpty()) {
+            sink.myCurrent = worklist.pop();
+
+            for (RecursionEdgeProvider provider : providers) {
+                provider.collectEdges(globalContext, sink.myCurrent, sink);
+            }
+        }
+    }
+
+    /**
+     * 接收当前 RefClass 的边，复用同一个对象，不用每个类 new 一个 lambda
+     */
+    private final class EdgeSink implements RecursionEdgeProvider.SupertypeSink {
+        private final GlobalInspectionContext myContext;
+        private final RefClassHierarchy myHierarchy;
+        private final Set<RefClass> myProcessed;
+        private final ArrayDeque<RefClass> myWorklist;
+
+        private RefClass myCurrent;
+
+        private EdgeSink(GlobalInspectionContext context, RefClassHierarchy hierarchy, Set<RefClass> processed, ArrayDeque<RefClass> worklist) {
+            myContext = context;
+            myHierarchy = hierarchy;
+            myProcessed = processed;
+            myWorklist = worklist;
+        }
+
+        @Override
+        public void accept(RefClass outTypeReference) {
+            accept(outTypeReference, false);
+        }
+
+        @Override
+        public void acceptSupertype(@NotNull RefClass supertype) {
+            accept(supertype, true);
+        }
+
+        private void accept(RefClass outTypeReference, boolean supertype) {
+            if (myCurrent.equals(outTypeReference)) {
+                //如果是自己的话，添加到已分析里面，且跳过
+                myProcessed.add(outTypeReference);
+                return;
+            }
+
+            if (!myProcessed.add(outTypeReference)) {
+                //已经处理了，直接下一个；之前只作为父类型到达的，这次直接到达，重新处理一遍把子类带上
+                if (!supertype && myHierarchy.markReachedDirectly(outTypeReference)) {
+                    myWorklist.push(outTypeReference);
+                }
+                return;
+            }
+
+            if (supertype) {
+                myHierarchy.markReachedAsSupertype(outTypeReference);
+            }
+
+            //设置为 Reachable
+            addEntryPoint(myContext, outTypeReference);
+
+            // 放入队列，稍后处理它的边
+            myWorklist.push(outTypeReference);
+        }
+    }
+}
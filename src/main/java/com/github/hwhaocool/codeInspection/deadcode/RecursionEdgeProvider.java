@@ -0,0 +1,74 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.openapi.extensions.ExtensionPointName;
+import com.intellij.psi.PsiClass;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.uast.UClass;
+
+import java.util.Collection;
+import java.util.function.Consumer;
+
+/**
+ * 递归设置 Reachable 时，一个类会「带上」哪些类，比如字段类型、getter 返回值类型
+ * <p>
+ * 所有实现都在 {@link RecursionChain} 里对同一个 RefClass 一次性调用，新增规则不会多一遍遍历
+ * @author YellowTail
+ * @since 2020-12-18
+ */
+public interface RecursionEdgeProvider {
+
+    ExtensionPointName<RecursionEdgeProvider> EP_NAME = ExtensionPointName.create("org.intellij.sdk.codeInspection.recursionEdgeProvider");
+
+    /**
+     * 找出 refClass 指向的类，refClass 可达的时候这些类也设置为可达
+     * @param globalContext 上下文
+     * @param refClass 已经可达的 refClass
+     * @param edges 接收指向的类
+     * @author YellowTail
+     * @since 2020-12-18
+     */
+    void collectEdges(@NotNull GlobalInspectionContext globalContext, @NotNull RefClass refClass, @NotNull Consumer<RefClass> edges);
+
+    /**
+     * psiClass 是当前 project 的类的话，交给 edges
+     * @author YellowTail
+     * @since 2020-12-18
+     */
+    default void acceptClasses(@NotNull GlobalInspectionContext globalContext, @NotNull Collection<PsiClass> psiClasses, @NotNull Consumer<RefClass> edges) {
+        for (PsiClass psiClass : psiClasses) {
+            RefElement reference = globalContext.getRefManager().getReference(psiClass);
+
+            if (reference instanceof RefClass) {
+                edges.accept((RefClass) reference);
+            }
+        }
+    }
+
+    /**
+     * 得到 refClass 对应的 PsiClass，kotlin 之类的也会转成 java 的视图
+     * @author YellowTail
+     * @since 2020-12-18
+     */
+    @Nullable
+    default PsiClass psiClassOf(@NotNull RefClass refClass) {
+        UClass uClass = refClass.getUastElement();
+        return uClass == null ? null : uClass.getJavaPsi();
+    }
+
+    /**
+     * 能区分父类型边的接收者（{@link RecursionChain} 传进来的就是），只作为父类型到达的类不会带上它的子类
+     * @author YellowTail
+     * @since 2020-12-30
+     */
+    interface SupertypeSink extends Consumer<RefClass> {
+
+        /**
+         * refClass 因为是当前类的父类型而可达
+         */
+        void acceptSupertype(@NotNull RefClass supertype);
+    }
+}
@@ -0,0 +1,35 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.util.PropertyUtilBase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * 通过 getter 的返回值类型 递归设置 Reachable，没有对应字段的 getter（比如计算出来的属性）也能带上
+ * @author YellowTail
+ * @since 2020-12-18
+ */
+public class RecursionGetter implements RecursionEdgeProvider {
+
+    @Override
+    public void collectEdges(@NotNull GlobalInspectionContext globalContext, @NotNull RefClass refClass, @NotNull Consumer<RefClass> edges) {
+        PsiClass psiClass = psiClassOf(refClass);
+        if (psiClass == null) {
+            return;
+        }
+
+        for (PsiMethod method : psiClass.getMethods()) {
+            if (method.hasModifierProperty(PsiModifier.STATIC) || !PropertyUtilBase.isSimplePropertyGetter(method)) {
+                continue;
+            }
+
+            acceptClasses(globalContext, ProjectTypeClasses.ofReturnType(method), edges);
+        }
+    }
+}
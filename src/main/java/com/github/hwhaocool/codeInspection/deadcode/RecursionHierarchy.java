@@ -0,0 +1,41 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * 通过继承关系 递归设置 Reachable
+ * <p>
+ * 父类（比如抽象的 BaseVO）可达之后，它的字段会由 {@link RecursionField} 接着处理；
+ * 直接用到的类，子类也设置为可达，字段声明成父类型的时候，实际放进去的可能是任何一个子类。
+ * 只作为父类型到达的类不带上它的子类，不然一个 VO 可达，同一个 BaseVO 下面所有的 VO 都跟着可达了；
+ * 之后这个父类型被直接用到（比如字段类型）的时候，{@link RecursionChain} 会重新处理它，再把子类带上。
+ * 闭包是一次检查只算一次的 {@link RefClassHierarchy}，这里只是查表
+ * @author YellowTail
+ * @since 2020-12-18
+ */
+public class RecursionHierarchy implements RecursionEdgeProvider {
+
+    @Override
+    public void collectEdges(@NotNull GlobalInspectionContext globalContext, @NotNull RefClass refClass, @NotNull Consumer<RefClass> edges) {
+        RefClassHierarchy hierarchy = RefClassHierarchy.getInstance(globalContext);
+
+        for (RefClass supertype : hierarchy.supertypesOf(refClass)) {
+            if (edges instanceof SupertypeSink) {
+                ((SupertypeSink) edges).acceptSupertype(supertype);
+            } else {
+                edges.accept(supertype);
+            }
+        }
+
+        if (hierarchy.isReachedAsSupertypeOnly(refClass)) {
+            return;
+        }
+        for (RefClass subtype : hierarchy.subtypesOf(refClass)) {
+            edges.accept(subtype);
+        }
+    }
+}
@@ -1,7 +1,6 @@
 package com.github.hwhaocool.codeInspection.deadcode;
 
 import com.intellij.codeInspection.GlobalInspectionContext;
-import com.intellij.codeInspection.GlobalJavaInspectionContext;
 import com.intellij.codeInspection.reference.RefClass;
 
 import java.util.Set;
@@ -26,6 +25,6 @@ public interface RecursionReachable {
      * @since 2020-12-14
      */
     default void addEntryPoint(final GlobalInspectionContext context, RefClass outTypeReference) {
-        context.getExtension(GlobalJavaInspectionContext.CONTEXT).getEntryPointsManager(context.getRefManager()).addEntryPoint(outTypeReference, false);
+        EntryPointBuffer.getInstance(context).add(outTypeReference);
     }
 }
@@ -0,0 +1,35 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.util.PropertyUtilBase;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.function.Consumer;
+
+/**
+ * 通过 setter 的参数类型 递归设置 Reachable，反序列化的时候是按 setter 的参数类型创建对象的
+ * @author YellowTail
+ * @since 2020-12-18
+ */
+public class RecursionSetter implements RecursionEdgeProvider {
+
+    @Override
+    public void collectEdges(@NotNull GlobalInspectionContext globalContext, @NotNull RefClass refClass, @NotNull Consumer<RefClass> edges) {
+        PsiClass psiClass = psiClassOf(refClass);
+        if (psiClass == null) {
+            return;
+        }
+
+        for (PsiMethod method : psiClass.getMethods()) {
+            if (method.hasModifierProperty(PsiModifier.STATIC) || !PropertyUtilBase.isSimplePropertySetter(method)) {
+                continue;
+            }
+
+            acceptClasses(globalContext, ProjectTypeClasses.ofParameters(method), edges);
+        }
+    }
+}
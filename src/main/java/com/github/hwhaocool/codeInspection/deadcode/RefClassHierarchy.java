@@ -0,0 +1,147 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * 一次检查里 RefClass 的继承关系闭包：所有父类型、所有子类型
+ * <p>
+ * 由 {@link RefClass#getBaseClasses()} / {@link RefClass#getSubClasses()} 计算，每个类只算一次并记下来，
+ * 之后判断两个类有没有继承关系就是查表，不用每次重新往上或往下找。
+ * <p>
+ * 另外记着递归设置 Reachable 时哪些类只是作为别的类的父类型到达的（见 {@link RecursionHierarchy}）
+ * @author YellowTail
+ * @since 2020-12-19
+ */
+public class RefClassHierarchy {
+
+    private static final Key<RefClassHierarchy> KEY = Key.create("yellow.vo.ref.class.hierarchy");
+
+    private static final RefClass[] EMPTY = new RefClass[0];
+
+    private final Map<RefClass, RefClass[]> mySupertypes = new HashMap<>();
+    private final Map<RefClass, RefClass[]> mySubtypes = new HashMap<>();
+
+    /**
+     * 只作为父类型到达、还没有被直接用到的类
+     */
+    private final Set<RefClass> myReachedAsSupertypeOnly = new HashSet<>();
+
+    private RefClassHierarchy() {
+    }
+
+    @NotNull
+    public static synchronized RefClassHierarchy getInstance(@NotNull GlobalInspectionContext context) {
+        RefClassHierarchy hierarchy = context.getUserData(KEY);
+        if (hierarchy == null) {
+            hierarchy = new RefClassHierarchy();
+            context.putUserData(KEY, hierarchy);
+        }
+        return hierarchy;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * @return refClass 所有的父类、接口（不包括自己）
+     */
+    @NotNull
+    public synchronized RefClass[] supertypesOf(@NotNull RefClass refClass) {
+        return closure(refClass, mySupertypes, RefClass::getBaseClasses);
+    }
+
+    /**
+     * @return refClass 所有的子类、实现类（不包括自己）
+     */
+    @NotNull
+    public synchronized RefClass[] subtypesOf(@NotNull RefClass refClass) {
+        return closure(refClass, mySubtypes, RefClass::getSubClasses);
+    }
+
+    /**
+     * 记下 refClass 是作为父类型到达的
+     */
+    public synchronized void markReachedAsSupertype(@NotNull RefClass refClass) {
+        myReachedAsSupertypeOnly.add(refClass);
+    }
+
+    /**
+     * 记下 refClass 被直接用到了
+     * @return 之前只是作为父类型到达的返回 true，这时候要重新处理，把子类带上
+     */
+    public synchronized boolean markReachedDirectly(@NotNull RefClass refClass) {
+        return myReachedAsSupertypeOnly.remove(refClass);
+    }
+
+    public synchronized boolean isReachedAsSupertypeOnly(@NotNull RefClass refClass) {
+        return myReachedAsSupertypeOnly.contains(refClass);
+    }
+
+    /**
+     * 后序遍历计算闭包，一个类的闭包 = 直接相连的类 + 它们的闭包，算过的直接复用
+     */
+    @NotNull
+    private static RefClass[] closure(@NotNull RefClass refClass,
+                                      @NotNull Map<RefClass, RefClass[]> memo,
+                                      @NotNull Function<RefClass, Collection<RefClass>> next) {
+        RefClass[] known = memo.get(refClass);
+        if (known != null) {
+            return known;
+        }
+
+        // 正在计算的类，代码写错出现循环继承时用来断开
+        Set<RefClass> inProgress = new LinkedHashSet<>();
+        ArrayDeque<RefClass> stack = new ArrayDeque<>();
+        stack.push(refClass);
+
+        while (!stack.isEmpty()) {
+            RefClass current = stack.peek();
+
+            if (inProgress.add(current)) {
+                // 第一次看到，先把还没算过的相连的类压栈
+                for (RefClass adjacent : next.apply(current)) {
+                    if (!memo.containsKey(adjacent) && !inProgress.contains(adjacent)) {
+                        stack.push(adjacent);
+                    }
+                }
+                continue;
+            }
+
+            stack.pop();
+            if (memo.containsKey(current)) {
+                continue;
+            }
+
+            Set<RefClass> result = new LinkedHashSet<>();
+            for (RefClass adjacent : next.apply(current)) {
+                if (adjacent == current) {
+                    continue;
+                }
+                result.add(adjacent);
+                RefClass[] adjacentClosure = memo.get(adjacent);
+                if (adjacentClosure != null) {
+                    for (RefClass inherited : adjacentClosure) {
+                        result.add(inherited);
+                    }
+                }
+            }
+            result.remove(current);
+            memo.put(current, result.isEmpty() ? EMPTY : result.toArray(EMPTY));
+        }
+
+        return memo.get(refClass);
+    }
+}
@@ -0,0 +1,87 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefEntity;
+import com.intellij.codeInspection.reference.RefJavaVisitor;
+import com.intellij.openapi.util.Key;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 给一次检查里的所有 RefElement 分配连续的 int id，这样就可以用 bitset 之类的紧凑结构记录状态
+ * <p>
+ * 一次检查只建一次，放在 GlobalInspectionContext 的 user data 里，检查结束时通过 {@link #release} 释放，
+ * 不会像静态集合那样把上一次检查的 RefManager 整个拖在内存里
+ * @author YellowTail
+ * @since 2020-12-16
+ */
+public class RefElementIndex {
+
+    private static final Key<RefElementIndex> KEY = Key.create("yellow.vo.ref.element.index");
+
+    /**
+     * RefElement -> id + 1, 0 表示没有 id
+     */
+    private final TObjectIntHashMap<RefElement> myIds;
+
+    private final RefElement[] myElements;
+
+    private RefElementIndex(@NotNull List<RefElement> elements) {
+        myElements = elements.toArray(new RefElement[0]);
+        myIds = new TObjectIntHashMap<>(myElements.length);
+        for (int i = 0; i < myElements.length; i++) {
+            myIds.put(myElements[i], i + 1);
+        }
+    }
+
+    /**
+     * 得到当前检查的索引，第一次调用的时候遍历 RefManager 建立
+     * @param context 上下文
+     * @return 索引
+     * @author YellowTail
+     * @since 2020-12-16
+     */
+    @NotNull
+    public static synchronized RefElementIndex getInstance(@NotNull GlobalInspectionContext context) {
+        RefElementIndex index = context.getUserData(KEY);
+        if (index == null) {
+            List<RefElement> elements = new ArrayList<>();
+            context.getRefManager().iterate(new RefJavaVisitor() {
+                @Override
+                public void visitElement(@NotNull RefEntity refEntity) {
+                    if (refEntity instanceof RefElement) {
+                        elements.add((RefElement) refEntity);
+                    }
+                }
+            });
+            index = new RefElementIndex(elements);
+            context.putUserData(KEY, index);
+        }
+        return index;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * @return refElement 的 id，建索引之后才出现的 RefElement 返回 -1
+     */
+    public int idOf(@Nullable RefElement refElement) {
+        return refElement == null ? -1 : myIds.get(refElement) - 1;
+    }
+
+    @NotNull
+    public RefElement elementAt(int id) {
+        return myElements[id];
+    }
+
+    public int size() {
+        return myElements.length;
+    }
+}
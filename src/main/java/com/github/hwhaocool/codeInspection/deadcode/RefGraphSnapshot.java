@@ -0,0 +1,241 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefJavaElement;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * RefManager 引用图的快照，按 {@link RefElementIndex} 的 id 把边存成 CSR（压缩稀疏行）的 int 数组
+ * <p>
+ * 第 id 个元素的出边是 outTargets[outOffsets[id] .. outOffsets[id + 1])，入边、类型引用同理。
+ * 遍历的时候不用再走 getOutReferences() 的集合迭代器，几次遍历共用一份。
+ * <p>
+ * 只有引用图建完之后（runInspection 结束的时候，见 {@link #build}）才建快照，之后图只会因为删除元素变少；
+ * 在那之前图还在变，{@link #getInstance} 给的是不缓存、直接读 RefElement 集合的实时版本，不会漏掉后加的边。
+ * 指向没有 id 的元素（建索引之后才出现的）的行记在 incomplete 里，这些行和没有 id 的元素都退回 RefElement 自己的集合。
+ * 删除元素之后通过 {@link #invalidate} 丢掉，下次用的时候重建
+ * @author YellowTail
+ * @since 2020-12-23
+ */
+public class RefGraphSnapshot {
+    private static final Logger LOG = Logger.getInstance(RefGraphSnapshot.class);
+
+    private static final Key<RefGraphSnapshot> KEY = Key.create("yellow.vo.ref.graph.snapshot");
+
+    /**
+     * 引用图已经建完，可以建快照了
+     */
+    private static final Key<Boolean> COMPLETE_KEY = Key.create("yellow.vo.ref.graph.complete");
+
+    private final RefElementIndex myIndex;
+
+    private final Edges myOut;
+    private final Edges myIn;
+
+    /**
+     * RefJavaElement.getOutTypeReferences()，RecursionField 用
+     */
+    private final Edges myOutTypes;
+
+    /**
+     * @param live 为 true 的时候不建数组，所有的边都直接读 RefElement 自己的集合
+     */
+    private RefGraphSnapshot(@NotNull RefElementIndex index, boolean live) {
+        myIndex = index;
+        myOut = new Edges(index, RefElement::getOutReferences, live);
+        myIn = new Edges(index, RefElement::getInReferences, live);
+        myOutTypes = new Edges(index, element -> element instanceof RefJavaElement ? ((RefJavaElement) element).getOutTypeReferences() : null, live);
+    }
+
+    /**
+     * 引用图建完了，建立快照。runInspection 结束的时候调用
+     * @param context 上下文
+     * @author YellowTail
+     * @since 2020-12-30
+     */
+    public static synchronized void build(@NotNull GlobalInspectionContext context) {
+        context.putUserData(COMPLETE_KEY, Boolean.TRUE);
+        context.putUserData(KEY, null);
+        getInstance(context);
+    }
+
+    /**
+     * 得到当前检查的快照；引用图还没有建完的时候（{@link #build} 之前）得到的是实时版本，不缓存
+     * @param context 上下文
+     * @return 快照
+     * @author YellowTail
+     * @since 2020-12-23
+     */
+    @NotNull
+    public static synchronized RefGraphSnapshot getInstance(@NotNull GlobalInspectionContext context) {
+        if (context.getUserData(COMPLETE_KEY) == null) {
+            return new RefGraphSnapshot(RefElementIndex.getInstance(context), true);
+        }
+
+        RefGraphSnapshot snapshot = context.getUserData(KEY);
+        if (snapshot == null) {
+            long start = System.currentTimeMillis();
+            snapshot = new RefGraphSnapshot(RefElementIndex.getInstance(context), false);
+            context.putUserData(KEY, snapshot);
+
+            LOG.info(String.format("ref graph snapshot: %d elements, %d out edges, %d in edges, %d type edges, %d KB, built in %d ms",
+                    snapshot.myIndex.size(), snapshot.myOut.size(), snapshot.myIn.size(), snapshot.myOutTypes.size(),
+                    snapshot.footprintBytes() / 1024, System.currentTimeMillis() - start));
+        }
+        return snapshot;
+    }
+
+    /**
+     * 删除了元素，丢掉快照里的边，元素 id 不变（{@link RefElementIndex} 不动），下次用的时候重建
+     */
+    public static synchronized void invalidate(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * 检查结束，丢掉快照，下一次检查要等引用图重新建完
+     */
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+        context.putUserData(COMPLETE_KEY, null);
+    }
+
+    @NotNull
+    public RefElementIndex getIndex() {
+        return myIndex;
+    }
+
+    public void forEachOutReference(@NotNull RefElement element, @NotNull Consumer<? super RefElement> consumer) {
+        myOut.forEach(element, consumer);
+    }
+
+    public void forEachOutTypeReference(@NotNull RefClass refClass, @NotNull Consumer<? super RefClass> consumer) {
+        myOutTypes.forEach(refClass, target -> consumer.accept((RefClass) target));
+    }
+
+    public boolean anyInReference(@NotNull RefElement element, @NotNull Predicate<? super RefElement> predicate) {
+        return myIn.any(element, predicate);
+    }
+
+    /**
+     * @return 数组占用的字节数，不算 RefElementIndex 本身
+     */
+    public long footprintBytes() {
+        return myOut.footprintBytes() + myIn.footprintBytes() + myOutTypes.footprintBytes();
+    }
+
+    /**
+     * 一种边的 CSR
+     */
+    private static final class Edges {
+        private final RefElementIndex myIndex;
+
+        /**
+         * 取某个元素这一种边的原始集合，没有的话返回 null
+         */
+        private final Function<RefElement, Collection<? extends RefElement>> myReferences;
+
+        /**
+         * 实时版本为 null
+         */
+        @Nullable
+        private final int[] myOffsets;
+        @Nullable
+        private final int[] myTargets;
+
+        /**
+         * 有边指向没有 id 的元素的行
+         */
+        private final BitSet myIncomplete = new BitSet();
+
+        private Edges(@NotNull RefElementIndex index,
+                      @NotNull Function<RefElement, Collection<? extends RefElement>> references,
+                      boolean live) {
+            myIndex = index;
+            myReferences = references;
+
+            if (live) {
+                myOffsets = null;
+                myTargets = null;
+                return;
+            }
+
+            int size = index.size();
+            myOffsets = new int[size + 1];
+            for (int id = 0; id < size; id++) {
+                Collection<? extends RefElement> targets = references.apply(index.elementAt(id));
+                myOffsets[id + 1] = myOffsets[id] + (targets == null ? 0 : targets.size());
+            }
+
+            myTargets = new int[myOffsets[size]];
+            for (int id = 0; id < size; id++) {
+                Collection<? extends RefElement> targets = references.apply(index.elementAt(id));
+                if (targets == null) {
+                    continue;
+                }
+                int position = myOffsets[id];
+                for (RefElement target : targets) {
+                    int targetId = index.idOf(target);
+                    if (targetId < 0) {
+                        myIncomplete.set(id);
+                        continue;
+                    }
+                    myTargets[position++] = targetId;
+                }
+                // 没有 id 的目标不占位置，剩下的用 -1 填上
+                while (position < myOffsets[id + 1]) {
+                    myTargets[position++] = -1;
+                }
+            }
+        }
+
+        private void forEach(@NotNull RefElement element, @NotNull Consumer<? super RefElement> consumer) {
+            int id = myTargets == null ? -1 : myIndex.idOf(element);
+            if (id < 0 || myIncomplete.get(id)) {
+                Collection<? extends RefElement> targets = myReferences.apply(element);
+                if (targets != null) {
+                    targets.forEach(consumer);
+                }
+                return;
+            }
+
+            for (int i = myOffsets[id], end = myOffsets[id + 1]; i < end; i++) {
+                consumer.accept(myIndex.elementAt(myTargets[i]));
+            }
+        }
+
+        private boolean any(@NotNull RefElement element, @NotNull Predicate<? super RefElement> predicate) {
+            int id = myTargets == null ? -1 : myIndex.idOf(element);
+            if (id < 0 || myIncomplete.get(id)) {
+                Collection<? extends RefElement> targets = myReferences.apply(element);
+                return targets != null && targets.stream().anyMatch(predicate);
+            }
+
+            for (int i = myOffsets[id], end = myOffsets[id + 1]; i < end; i++) {
+                if (predicate.test(myIndex.elementAt(myTargets[i]))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private int size() {
+            return myTargets == null ? 0 : myTargets.length;
+        }
+
+        private long footprintBytes() {
+            return myTargets == null ? 0 : 4L * (myOffsets.length + myTargets.length) + myIncomplete.size() / 8;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一次检查里的计数，比如缓存命中次数，检查结束（{@link #release}）时打到日志里
+ * @author YellowTail
+ * @since 2020-12-25
+ */
+public class RunStatistics {
+    private static final Logger LOG = Logger.getInstance(RunStatistics.class);
+
+    private static final Key<RunStatistics> KEY = Key.create("yellow.vo.run.statistics");
+
+    private final Map<String, AtomicLong> myCounters = new ConcurrentHashMap<>();
+
+    @NotNull
+    public static synchronized RunStatistics getInstance(@NotNull GlobalInspectionContext context) {
+        RunStatistics statistics = context.getUserData(KEY);
+        if (statistics == null) {
+            statistics = new RunStatistics();
+            context.putUserData(KEY, statistics);
+        }
+        return statistics;
+    }
+
+    /**
+     * 把计数打到日志里，然后丢掉
+     */
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        RunStatistics statistics = context.getUserData(KEY);
+        if (statistics != null && !statistics.myCounters.isEmpty()) {
+            LOG.info("dead code run statistics: " + new TreeMap<>(statistics.myCounters));
+        }
+        context.putUserData(KEY, null);
+    }
+
+    public void add(@NotNull String counter, long delta) {
+        myCounters.computeIfAbsent(counter, name -> new AtomicLong()).addAndGet(delta);
+    }
+
+    public void increment(@NotNull String counter) {
+        add(counter, 1);
+    }
+
+    public long get(@NotNull String counter) {
+        AtomicLong value = myCounters.get(counter);
+        return value == null ? 0 : value.get();
+    }
+}
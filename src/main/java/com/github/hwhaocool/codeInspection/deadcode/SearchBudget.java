@@ -0,0 +1,100 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.concurrency.SensitiveProgressWrapper;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 外部使用搜索的时间预算：每个搜索最多用多久，一轮搜索（queryExternalUsagesRequests 一次调用）最多用多久
+ * <p>
+ * 超时的搜索通过一个定时取消的 ProgressIndicator 停下来，调用方把还没有结论的元素当作被使用了（宁放过，勿杀错），
+ * 只会少报死代码，不会误报
+ * @author YellowTail
+ * @since 2020-12-29
+ */
+public class SearchBudget {
+
+    public static final SearchBudget UNLIMITED = new SearchBudget(0, 0);
+
+    /**
+     * 每个搜索的毫秒数，0 表示不限制
+     */
+    private final long mySearchMillis;
+
+    /**
+     * 这一轮的截止时间，0 表示不限制
+     */
+    private final long myDeadline;
+
+    /**
+     * @param searchMillis 每个搜索最多用的毫秒数，0 表示不限制
+     * @param phaseMillis 从现在开始这一轮最多用的毫秒数，0 表示不限制
+     */
+    public SearchBudget(long searchMillis, long phaseMillis) {
+        mySearchMillis = Math.max(searchMillis, 0);
+        myDeadline = phaseMillis > 0 ? System.currentTimeMillis() + phaseMillis : 0;
+    }
+
+    public boolean isLimited() {
+        return mySearchMillis > 0 || myDeadline > 0;
+    }
+
+    /**
+     * @return 这一轮的时间用完了返回 true
+     */
+    public boolean isExpired() {
+        return myDeadline > 0 && System.currentTimeMillis() >= myDeadline;
+    }
+
+    /**
+     * 在预算内执行一个搜索
+     * @param search 搜索，要响应 checkCanceled
+     * @return 搜索的结果，超时返回 null
+     * @author YellowTail
+     * @since 2020-12-29
+     */
+    @Nullable
+    public <T> T compute(@NotNull Computable<T> search) {
+        long timeout = remainingMillis();
+        if (timeout <= 0) {
+            return search.compute();
+        }
+
+        ProgressIndicator outer = ProgressManager.getInstance().getProgressIndicator();
+        ProgressIndicator indicator = outer == null ? new EmptyProgressIndicator() : new SensitiveProgressWrapper(outer);
+        ScheduledFuture<?> cancel = AppExecutorUtil.getAppScheduledExecutorService()
+                .schedule(indicator::cancel, timeout, TimeUnit.MILLISECONDS);
+        try {
+            return ProgressManager.getInstance().runProcess(search, indicator);
+        } catch (ProcessCanceledException e) {
+            if (outer != null && outer.isCanceled()) {
+                // 整个检查被取消了，不是超时
+                throw e;
+            }
+            return null;
+        } finally {
+            cancel.cancel(false);
+        }
+    }
+
+    /**
+     * 这个搜索能用的毫秒数：每个搜索的预算和这一轮剩下的时间取小的，都不限制返回 0
+     */
+    private long remainingMillis() {
+        long timeout = mySearchMillis;
+        if (myDeadline > 0) {
+            long left = Math.max(myDeadline - System.currentTimeMillis(), 1);
+            timeout = timeout > 0 ? Math.min(timeout, left) : left;
+        }
+        return timeout;
+    }
+}
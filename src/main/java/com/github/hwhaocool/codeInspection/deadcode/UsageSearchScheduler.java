@@ -0,0 +1,209 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiNamedElement;
+import com.intellij.psi.impl.cache.impl.id.IdIndex;
+import com.intellij.psi.impl.cache.impl.id.IdIndexEntry;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.searches.ClassInheritorsSearch;
+import com.intellij.psi.search.searches.MethodReferencesSearch;
+import com.intellij.psi.search.searches.ReferencesSearch;
+import com.intellij.util.indexing.FileBasedIndex;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 自己执行外部使用搜索（代替 enqueue*Processor），按估计的开销从小到大执行
+ * <p>
+ * 开销是名字在词索引里出现的文件数，像 Result、Data 这种到处都是的名字排到最后。
+ * 搜到使用之后攒着，要执行开销大的搜索之前先把攒下的入口算一遍可达性（propagate），
+ * 搜索的元素这时候已经是入口、已经可达（派生类要求类已经实例化）的话，直接跳过（类的使用除外，见 {@link #isSettled}）。
+ * <p>
+ * 搜索和平台一样：范围是 {@link ExternalUsageScope}，找到一个引用就停
+ * @author YellowTail
+ * @since 2020-12-29
+ */
+public class UsageSearchScheduler {
+    private static final Logger LOG = Logger.getInstance(UsageSearchScheduler.class);
+
+    /**
+     * 名字出现在这么多文件以上的搜索，执行之前先 propagate
+     */
+    private static final int PROPAGATE_COST = 16;
+
+    public enum Kind {
+        CLASS_USAGES,
+        DERIVED_CLASSES,
+        METHOD_USAGES,
+        FIELD_USAGES
+    }
+
+    private final GlobalInspectionContext myContext;
+
+    private final List<Request> myRequests = new ArrayList<>();
+
+    public UsageSearchScheduler(@NotNull GlobalInspectionContext context) {
+        myContext = context;
+    }
+
+    /**
+     * 加一个搜索
+     * @param kind 搜索的种类
+     * @param target 搜到之后变成入口的元素，已经可达或者已经是入口的话不用搜
+     * @param element 要搜的类、方法或者字段，为 null 的时候当作搜到了
+     * @param onFound 搜到之后执行
+     * @author YellowTail
+     * @since 2020-12-29
+     */
+    public void add(@NotNull Kind kind, @NotNull RefElement target, @Nullable PsiElement element, @NotNull Runnable onFound) {
+        myRequests.add(new Request(kind, target, element, onFound));
+    }
+
+    public boolean isEmpty() {
+        return myRequests.isEmpty();
+    }
+
+    /**
+     * 按开销从小到大执行所有搜索
+     * @param propagate 把已经找到的入口算进可达性
+     * @param budget 时间预算，超时的搜索、以及这一轮时间用完之后剩下的搜索，都当作搜到了
+     * @author YellowTail
+     * @since 2020-12-29
+     */
+    public void run(@NotNull Runnable propagate, @NotNull SearchBudget budget) {
+        long start = System.currentTimeMillis();
+        List<Request> requests = new ArrayList<>(myRequests);
+        myRequests.clear();
+
+        ExternalUsageScope scope = ExternalUsageScope.getInstance(myContext);
+        ReadAction.run(() -> estimateCosts(requests, scope));
+        requests.sort(Comparator.comparingInt(request -> request.myCost));
+
+        RunStatistics statistics = RunStatistics.getInstance(myContext);
+        int found = 0;
+        int skipped = 0;
+        int conceded = 0;
+        int pendingFound = 0;
+        for (Request request : requests) {
+            ProgressManager.checkCanceled();
+
+            if (pendingFound > 0 && request.myCost >= PROPAGATE_COST && !isSettled(request) && !budget.isExpired()) {
+                propagate.run();
+                pendingFound = 0;
+            }
+            if (isSettled(request)) {
+                skipped++;
+                continue;
+            }
+
+            Boolean result = budget.isExpired() ? null : budget.compute(() -> ReadAction.compute(() -> search(request, scope)));
+            if (result == null) {
+                // 超时了不知道有没有使用，宁放过，勿杀错
+                ReadAction.run(() -> request.myOnFound.run());
+                conceded++;
+            } else if (result) {
+                ReadAction.run(() -> request.myOnFound.run());
+                found++;
+                pendingFound++;
+            }
+        }
+
+        statistics.add("usage searches run in cost order", requests.size() - skipped);
+        statistics.add("usage searches skipped as settled", skipped);
+        statistics.add("elements conceded by time budget", conceded);
+        LOG.info(String.format("usage search scheduler: %d searches, %d found, %d skipped as settled, %d conceded by time budget, %d ms",
+                requests.size(), found, skipped, conceded, System.currentTimeMillis() - start));
+    }
+
+    /**
+     * 搜到之后要做的事（把 target 标成入口）已经没有效果了，才算 settled
+     */
+    private boolean isSettled(@NotNull Request request) {
+        if (request.myKind == Kind.CLASS_USAGES) {
+            // 类搜到使用之后还要按字段、getter 等把关联的类设为可达（RecursionReachable），已经可达了也要搜
+            return false;
+        }
+
+        RefElement target = request.myTarget;
+        if (target.isEntry() || EntryPointBuffer.getInstance(myContext).contains(target)) {
+            return true;
+        }
+        if (request.myKind == Kind.DERIVED_CLASSES) {
+            // 类可达不等于实例化了：只从 static 成员可达的类，实例方法还在等它实例化，标成入口才会放出来
+            IncrementalReachability reachability = IncrementalReachability.getInstance(myContext);
+            return target instanceof RefClass && reachability != null && reachability.isInstantiated((RefClass) target);
+        }
+        // 方法可达说明方法体已经处理过（static、构造方法，或者所属的类已经实例化），字段可达也一样，标成入口不会多出可达的元素
+        return target.isReachable();
+    }
+
+    private static void estimateCosts(@NotNull List<Request> requests, @NotNull GlobalSearchScope scope) {
+        FileBasedIndex index = FileBasedIndex.getInstance();
+        Map<String, Integer> costs = new HashMap<>();
+        for (Request request : requests) {
+            String name = request.myElement instanceof PsiNamedElement ? ((PsiNamedElement) request.myElement).getName() : null;
+            request.myCost = name == null
+                    ? 0
+                    : costs.computeIfAbsent(name, key -> index.getContainingFiles(IdIndex.NAME, new IdIndexEntry(key, true), scope).size());
+        }
+    }
+
+    /**
+     * @return 找到使用返回 true
+     */
+    private static boolean search(@NotNull Request request, @NotNull GlobalSearchScope scope) {
+        PsiElement element = request.myElement;
+        if (element == null) {
+            // 没法搜，宁放过，勿杀错
+            return true;
+        }
+
+        // 种类和元素对不上的也当作搜到了
+        switch (request.myKind) {
+            case CLASS_USAGES:
+                return ReferencesSearch.search(element, scope, false).findFirst() != null;
+            case DERIVED_CLASSES:
+                return !(element instanceof PsiClass) || ClassInheritorsSearch.search((PsiClass) element, scope, false).findFirst() != null;
+            case METHOD_USAGES:
+                return !(element instanceof PsiMethod) || MethodReferencesSearch.search((PsiMethod) element, scope, true).findFirst() != null;
+            case FIELD_USAGES:
+                return ReferencesSearch.search(element, scope, false).findFirst() != null;
+            default:
+                return true;
+        }
+    }
+
+    private static final class Request {
+        private final Kind myKind;
+        private final RefElement myTarget;
+        @Nullable
+        private final PsiElement myElement;
+        private final Runnable myOnFound;
+
+        /**
+         * 名字出现的文件数
+         */
+        private int myCost;
+
+        private Request(@NotNull Kind kind, @NotNull RefElement target, @Nullable PsiElement element, @NotNull Runnable onFound) {
+            myKind = kind;
+            myTarget = target;
+            myElement = element;
+            myOnFound = onFound;
+        }
+    }
+}
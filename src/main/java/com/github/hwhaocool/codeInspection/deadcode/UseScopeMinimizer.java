@@ -0,0 +1,147 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefJavaElement;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiCompiledElement;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiMember;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.PsiPackage;
+import com.intellij.psi.search.LocalSearchScope;
+import com.intellij.psi.search.PsiSearchHelper;
+import com.intellij.psi.search.SearchScope;
+import com.intellij.psi.search.UseScopeEnlarger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按访问权限得到一个元素最小的合法使用范围，看它和外部范围（{@link ExternalUsageScope}）有没有交集
+ * <p>
+ * private 的只能在所在的文件（顶层类）里用，包内可见的只能在同一个包的目录里用（包括目录里的 XML 之类的非 Java 文件）。
+ * 这个范围里没有一个文件在外部范围里的话，外部搜索（使用、派生类）不可能找到任何东西，不用排队搜索。
+ * <p>
+ * 插件可以通过 {@link UseScopeEnlarger} 扩大使用范围，有扩大的元素用平台算出来的使用范围
+ * （{@link PsiSearchHelper#getUseScope}，平台自己搜索的时候也用它）重新判断，所以结果不变；
+ * 没有扩大的才按访问权限算，包内可见的按包记下来
+ * @author YellowTail
+ * @since 2020-12-28
+ */
+public class UseScopeMinimizer {
+
+    private static final Key<UseScopeMinimizer> KEY = Key.create("yellow.vo.use.scope.minimizer");
+
+    private final GlobalInspectionContext myContext;
+
+    private final ExternalUsageScope myScope;
+
+    /**
+     * 包名 -> 包的目录里有没有在外部范围里的文件
+     */
+    private final Map<String, Boolean> myPackageHasExternalFiles = new ConcurrentHashMap<>();
+
+    private UseScopeMinimizer(@NotNull GlobalInspectionContext context) {
+        myContext = context;
+        myScope = ExternalUsageScope.getInstance(context);
+    }
+
+    @NotNull
+    public static synchronized UseScopeMinimizer getInstance(@NotNull GlobalInspectionContext context) {
+        UseScopeMinimizer minimizer = context.getUserData(KEY);
+        if (minimizer == null) {
+            minimizer = new UseScopeMinimizer(context);
+            context.putUserData(KEY, minimizer);
+        }
+        return minimizer;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    /**
+     * @param refElement 类、方法或者字段
+     * @return 最小使用范围和外部范围没有交集，可以不搜索的时候返回 true
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    public boolean isOutsideExternalScope(@NotNull RefJavaElement refElement) {
+        String accessModifier = refElement.getAccessModifier();
+        boolean isPrivate = PsiModifier.PRIVATE.equals(accessModifier);
+        if (!isPrivate && !PsiModifier.PACKAGE_LOCAL.equals(accessModifier)) {
+            return false;
+        }
+
+        PsiElement element = refElement.getPsiElement();
+        if (!(element instanceof PsiMember) || element instanceof PsiCompiledElement) {
+            return false;
+        }
+        PsiFile file = element.getContainingFile();
+        if (!(file instanceof PsiJavaFile)) {
+            // Kotlin 之类的访问权限和 Java 不一样，不处理
+            return false;
+        }
+        VirtualFile virtualFile = file.getVirtualFile();
+        if (virtualFile == null) {
+            return false;
+        }
+
+        boolean outside = isPrivate
+                ? !myScope.contains(virtualFile)
+                : !myPackageHasExternalFiles.computeIfAbsent(((PsiJavaFile) file).getPackageName(), this::hasExternalFiles);
+        if (outside && isUseScopeEnlarged(element)) {
+            outside = !intersectsExternalScope(PsiSearchHelper.getInstance(myContext.getProject()).getUseScope(element));
+        }
+        if (outside) {
+            RunStatistics.getInstance(myContext).increment("usage searches skipped by use scope");
+        }
+        return outside;
+    }
+
+    private static boolean isUseScopeEnlarged(@NotNull PsiElement element) {
+        for (UseScopeEnlarger enlarger : UseScopeEnlarger.EP_NAME.getExtensionList()) {
+            if (enlarger.getAdditionalUseScope(element) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 只有 LocalSearchScope 能逐个文件判断，GlobalSearchScope 不知道有没有交集，当作有
+     */
+    private boolean intersectsExternalScope(@NotNull SearchScope useScope) {
+        if (!(useScope instanceof LocalSearchScope)) {
+            return true;
+        }
+        for (VirtualFile file : ((LocalSearchScope) useScope).getVirtualFiles()) {
+            if (myScope.contains(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean hasExternalFiles(@NotNull String packageName) {
+        PsiPackage psiPackage = JavaPsiFacade.getInstance(myContext.getProject()).findPackage(packageName);
+        if (psiPackage == null) {
+            // 找不到包，当作有
+            return true;
+        }
+        for (PsiDirectory directory : psiPackage.getDirectories()) {
+            for (VirtualFile child : directory.getVirtualFile().getChildren()) {
+                if (!child.isDirectory() && myScope.contains(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
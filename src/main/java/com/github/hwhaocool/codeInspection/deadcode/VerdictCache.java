@@ -0,0 +1,76 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 记住 isEntryPoint 之类的判断结果
+ * <p>
+ * 每次查询带一个 stamp（修改计数、设置等能影响结果的东西，每样一个 long），其中任何一个变了就把之前的结果全部丢掉。
+ * 几个计数分开比较，不合成一个数，不会出现 a 加 1、b 减 1 之后 stamp 不变的情况。
+ * key 是弱引用，元素没人用了结果也跟着回收
+ * @author YellowTail
+ * @since 2020-12-24
+ */
+public class VerdictCache<K> {
+
+    private final Map<K, Boolean> myVerdicts = ContainerUtil.createConcurrentWeakMap();
+
+    /**
+     * 当前结果对应的 stamp，还没有查询过的时候为 null
+     */
+    private volatile long[] myStamp;
+
+    private final AtomicLong myHits = new AtomicLong();
+    private final AtomicLong myMisses = new AtomicLong();
+
+    /**
+     * @param key 要判断的元素
+     * @param stamp 当前的 stamp，调用之后不能再改
+     * @param compute 没有缓存的时候计算
+     * @return 判断结果
+     * @author YellowTail
+     * @since 2020-12-24
+     */
+    public boolean get(@NotNull K key, long @NotNull [] stamp, @NotNull Predicate<? super K> compute) {
+        if (!Arrays.equals(stamp, myStamp)) {
+            synchronized (this) {
+                if (!Arrays.equals(stamp, myStamp)) {
+                    myVerdicts.clear();
+                    myStamp = stamp;
+                }
+            }
+        }
+
+        Boolean verdict = myVerdicts.get(key);
+        if (verdict != null) {
+            myHits.incrementAndGet();
+            return verdict;
+        }
+        myMisses.incrementAndGet();
+
+        boolean computed = compute.test(key);
+        // 计算的过程中 stamp 变了的话，结果可能已经过时，不放进去
+        if (Arrays.equals(stamp, myStamp)) {
+            myVerdicts.put(key, computed);
+        }
+        return computed;
+    }
+
+    public void clear() {
+        myVerdicts.clear();
+    }
+
+    public long getHits() {
+        return myHits.get();
+    }
+
+    public long getMisses() {
+        return myMisses.get();
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 递归设置 Reachable 时已经处理过的 RefClass，按 {@link RefElementIndex} 的 id 记在 bitset 里
+ * <p>
+ * 每次检查一份，放在 GlobalInspectionContext 的 user data 里，这样上一次检查处理过的类不会让这一次跳过
+ * @author YellowTail
+ * @since 2020-12-16
+ */
+public class VisitedRefClasses extends AbstractSet<RefClass> {
+
+    private static final Key<VisitedRefClasses> KEY = Key.create("yellow.vo.visited.ref.classes");
+
+    private final RefElementIndex myIndex;
+
+    private final BitSet myVisited = new BitSet();
+
+    /**
+     * 建索引之后才出现的 RefClass，没有 id，只能放到普通集合里
+     */
+    private final Set<RefClass> myUnindexed = new HashSet<>();
+
+    private int mySize;
+
+    private VisitedRefClasses(@NotNull RefElementIndex index) {
+        myIndex = index;
+    }
+
+    @NotNull
+    public static synchronized VisitedRefClasses getInstance(@NotNull GlobalInspectionContext context) {
+        VisitedRefClasses visited = context.getUserData(KEY);
+        if (visited == null) {
+            visited = new VisitedRefClasses(RefElementIndex.getInstance(context));
+            context.putUserData(KEY, visited);
+        }
+        return visited;
+    }
+
+    public static synchronized void release(@NotNull GlobalInspectionContext context) {
+        context.putUserData(KEY, null);
+    }
+
+    @Override
+    public boolean add(RefClass refClass) {
+        int id = myIndex.idOf(refClass);
+        boolean added;
+        if (id < 0) {
+            added = myUnindexed.add(refClass);
+        } else {
+            added = !myVisited.get(id);
+            myVisited.set(id);
+        }
+        if (added) {
+            mySize++;
+        }
+        return added;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof RefClass)) {
+            return false;
+        }
+        int id = myIndex.idOf((RefElement) o);
+        return id < 0 ? myUnindexed.contains(o) : myVisited.get(id);
+    }
+
+    @NotNull
+    @Override
+    public Iterator<RefClass> iterator() {
+        List<RefClass> classes = new ArrayList<>(mySize);
+        for (int id = myVisited.nextSetBit(0); id >= 0; id = myVisited.nextSetBit(id + 1)) {
+            classes.add((RefClass) myIndex.elementAt(id));
+        }
+        classes.addAll(myUnindexed);
+        return classes.iterator();
+    }
+
+    @Override
+    public int size() {
+        return mySize;
+    }
+}
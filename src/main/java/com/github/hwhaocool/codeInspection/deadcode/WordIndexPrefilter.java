@@ -0,0 +1,115 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.reference.RefJavaElement;
+import com.intellij.codeInspection.reference.RefMethod;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiCompiledElement;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.search.PsiSearchHelper;
+import com.intellij.psi.util.PropertyUtilBase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 外部使用搜索之前，先用词索引看一下名字在外部范围（{@link ExternalUsageScope}）里有没有出现过
+ * <p>
+ * 除了声明所在的文件，名字一次都没出现的话，引用搜索也不可能找到引用，直接算没有外部使用，不用排队搜索；
+ * 只看依赖了声明所在模块的模块（{@link ModuleDependents}），方法还要加上依赖了最顶层父方法所在模块的模块。
+ * getter、setter 还可能按属性名被引用（EL、XML 之类），属性名也要没出现才算；
+ * 不是 Java 的类、方法、字段（比如 Kotlin 的属性）名字对不上，不过滤
+ * @author YellowTail
+ * @since 2020-12-28
+ */
+public final class WordIndexPrefilter {
+
+    private WordIndexPrefilter() {
+    }
+
+    /**
+     * @param context 上下文
+     * @param refElement 类、方法或者字段
+     * @return 名字在外部一次都没出现，可以不搜索的时候返回 true
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    public static boolean hasNoExternalOccurrences(@NotNull GlobalInspectionContext context, @NotNull RefJavaElement refElement) {
+        PsiElement element = refElement.getPsiElement();
+        if (element == null || element instanceof PsiCompiledElement) {
+            return false;
+        }
+
+        List<String> names = namesOf(element);
+        if (names.isEmpty()) {
+            return false;
+        }
+
+        // 只有依赖了声明所在模块的模块才能引用到它；方法搜的是最顶层的父方法，父方法所在的模块也算
+        PsiFile file = element.getContainingFile();
+        List<VirtualFile> declarationFiles = new ArrayList<>(2);
+        declarationFiles.add(file == null ? null : file.getVirtualFile());
+        if (refElement instanceof RefMethod) {
+            for (RefMethod root : MethodHierarchyIndex.getInstance(context).getRootMethods((RefMethod) refElement)) {
+                if (root != refElement) {
+                    declarationFiles.add(fileOf(root.getPsiElement()));
+                }
+            }
+        }
+        GlobalSearchScope scope = ModuleDependents.getInstance(context)
+                .restrict(ExternalUsageScope.getInstance(context), declarationFiles);
+
+        PsiSearchHelper helper = PsiSearchHelper.getInstance(context.getProject());
+        for (String name : names) {
+            PsiSearchHelper.SearchCostResult cost = helper.isCheapEnoughToSearch(name, scope, file, null);
+            if (cost != PsiSearchHelper.SearchCostResult.ZERO_OCCURRENCES) {
+                return false;
+            }
+        }
+
+        RunStatistics.getInstance(context).increment("usage searches skipped by word index");
+        return true;
+    }
+
+    @Nullable
+    private static VirtualFile fileOf(@Nullable PsiElement element) {
+        PsiFile file = element == null ? null : element.getContainingFile();
+        return file == null ? null : file.getVirtualFile();
+    }
+
+    /**
+     * 引用里可能出现的名字，不知道的时候返回空
+     */
+    @NotNull
+    private static List<String> namesOf(@NotNull PsiElement element) {
+        List<String> names = new ArrayList<>(2);
+        if (element instanceof PsiClass) {
+            addName(names, ((PsiClass) element).getName());
+        } else if (element instanceof PsiMethod) {
+            PsiMethod method = (PsiMethod) element;
+            if (method.isConstructor()) {
+                PsiClass containingClass = method.getContainingClass();
+                addName(names, containingClass == null ? null : containingClass.getName());
+            } else {
+                addName(names, method.getName());
+                addName(names, PropertyUtilBase.getPropertyName(method));
+            }
+        } else if (element instanceof PsiField) {
+            addName(names, ((PsiField) element).getName());
+        }
+        return names;
+    }
+
+    private static void addName(@NotNull List<String> names, String name) {
+        if (name != null && !name.isEmpty()) {
+            names.add(name);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.hwhaocool.codeInspection.deadcode;
 
+import com.github.hwhaocool.codeInspection.fromsdk.DeprecatedEntryPoint;
 import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
 import com.github.hwhaocool.codeInspection.fromsdk.UnusedParametersInspection;
 import com.github.hwhaocool.codeInspection.fromsdk.unusedSymbol.UnusedSymbolLocalInspectionImpl;
@@ -37,6 +38,7 @@ import com.intellij.psi.PsiLocalVariable;
 import com.intellij.psi.PsiResourceVariable;
 import com.intellij.psi.PsiVariable;
 import com.intellij.psi.controlFlow.DefUseUtil;
+import com.intellij.ui.JBIntSpinner;
 import com.intellij.ui.ScrollPaneFactory;
 import com.intellij.ui.TitledSeparator;
 import com.intellij.ui.components.JBLabel;
@@ -134,6 +136,10 @@ public class YellowVoInspection extends UnusedDeclarationInspectionBase {
         // 2. 得到 入口选项面板
         tabs.add("Entry points",
                 ScrollPaneFactory.createScrollPane(new YellowVoInspection.OptionsPanel(), true));
+
+        // 3. 性能相关选项面板
+        tabs.add("Performance",
+                ScrollPaneFactory.createScrollPane(new YellowVoInspection.PerformancePanel(), true));
         return tabs;
     }
 
@@ -196,7 +202,10 @@ public class YellowVoInspection extends UnusedDeclarationInspectionBase {
             // main 方法
             myMainsCheckbox = new JCheckBox(JavaBundle.message("inspection.dead.code.option.main"));
             myMainsCheckbox.setSelected(ADD_MAINS_TO_ENTRIES);
-            myMainsCheckbox.addActionListener(e -> ADD_MAINS_TO_ENTRIES = myMainsCheckbox.isSelected());
+            myMainsCheckbox.addActionListener(e -> {
+                ADD_MAINS_TO_ENTRIES = myMainsCheckbox.isSelected();
+                entryPointSettingsChanged();
+            });
 
 
             add(myMainsCheckbox, gc);
@@ -204,13 +213,19 @@ public class YellowVoInspection extends UnusedDeclarationInspectionBase {
 
             myAppletToEntries = new JCheckBox(JavaBundle.message("inspection.dead.code.option.applet"));
             myAppletToEntries.setSelected(ADD_APPLET_TO_ENTRIES);
-            myAppletToEntries.addActionListener(e -> ADD_APPLET_TO_ENTRIES = myAppletToEntries.isSelected());
+            myAppletToEntries.addActionListener(e -> {
+                ADD_APPLET_TO_ENTRIES = myAppletToEntries.isSelected();
+                entryPointSettingsChanged();
+            });
             add(myAppletToEntries, gc);
             gc.gridy++;
 
             myServletToEntries = new JCheckBox(JavaBundle.message("inspection.dead.code.option.servlet"));
             myServletToEntries.setSelected(ADD_SERVLET_TO_ENTRIES);
-            myServletToEntries.addActionListener(e -> ADD_SERVLET_TO_ENTRIES = myServletToEntries.isSelected());
+            myServletToEntries.addActionListener(e -> {
+                ADD_SERVLET_TO_ENTRIES = myServletToEntries.isSelected();
+                entryPointSettingsChanged();
+            });
             add(myServletToEntries, gc);
             gc.gridy++;
 
@@ -218,7 +233,10 @@ public class YellowVoInspection extends UnusedDeclarationInspectionBase {
                 if (extension.showUI()) {
                     final JCheckBox extCheckbox = new JCheckBox(extension.getDisplayName());
                     extCheckbox.setSelected(extension.isSelected());
-                    extCheckbox.addActionListener(e -> extension.setSelected(extCheckbox.isSelected()));
+                    extCheckbox.addActionListener(e -> {
+                        extension.setSelected(extCheckbox.isSelected());
+                        entryPointSettingsChanged();
+                    });
                     add(extCheckbox, gc);
                     gc.gridy++;
                 }
@@ -227,7 +245,10 @@ public class YellowVoInspection extends UnusedDeclarationInspectionBase {
             myNonJavaCheckbox =
                     new JCheckBox(JavaBundle.message("inspection.dead.code.option.external"));
             myNonJavaCheckbox.setSelected(ADD_NONJAVA_TO_ENTRIES);
-            myNonJavaCheckbox.addActionListener(e -> ADD_NONJAVA_TO_ENTRIES = myNonJavaCheckbox.isSelected());
+            myNonJavaCheckbox.addActionListener(e -> {
+                ADD_NONJAVA_TO_ENTRIES = myNonJavaCheckbox.isSelected();
+                entryPointSettingsChanged();
+            });
 
             gc.weighty = 1;
             add(myNonJavaCheckbox, gc);
@@ -239,14 +260,118 @@ public class YellowVoInspection extends UnusedDeclarationInspectionBase {
             constraints.anchor = GridBagConstraints.NORTHWEST;
             constraints.fill = GridBagConstraints.NONE;
             constraints.weightx = 0;
-            btnPanel.add(EntryPointsManagerImpl.createConfigureClassPatternsButton(), constraints);
+            btnPanel.add(notifyAfterConfigured(EntryPointsManagerImpl.createConfigureClassPatternsButton()), constraints);
             constraints.gridx = 1;
-            btnPanel.add(EntryPointsManagerImpl.createConfigureAnnotationsButton(), constraints);
+            btnPanel.add(notifyAfterConfigured(EntryPointsManagerImpl.createConfigureAnnotationsButton()), constraints);
             constraints.fill = GridBagConstraints.HORIZONTAL;
             constraints.weightx = 1;
             btnPanel.add(Box.createHorizontalBox(), constraints);
             return btnPanel;
         }
+
+        /**
+         * 按钮原来的监听器（打开 EntryPointsManager 的配置对话框）执行完之后，再记一次入口设置的修改
+         * <p>
+         * Swing 先调用后加的监听器，所以不能直接 addActionListener，要把原来的拿下来包一层
+         */
+        private JButton notifyAfterConfigured(JButton button) {
+            final ActionListener[] listeners = button.getActionListeners();
+            for (ActionListener listener : listeners) {
+                button.removeActionListener(listener);
+            }
+            button.addActionListener(e -> {
+                for (int i = listeners.length - 1; i >= 0; i--) {
+                    listeners[i].actionPerformed(e);
+                }
+                entryPointSettingsChanged();
+            });
+            return button;
+        }
+    }
+
+    /**
+     * 性能选项面板
+     * <p>
+     * 多线程计算可达性、按开销排序搜索、一次性找出 deprecated 元素只影响速度，结果不变；
+     * 批量扫描只认显式的引用，只有 ReferencesSearch 扩展才找得到的使用会漏掉，类可能被报成没用；
+     * 时间预算超时的元素直接当作被使用了，这些元素可能漏报
+     */
+    private class PerformancePanel extends JPanel {
+        private final JCheckBox myParallelCheckbox;
+        private final JCheckBox myBatchCheckbox;
+        private final JCheckBox myCostOrderedCheckbox;
+        private final JBIntSpinner mySearchBudgetSpinner;
+        private final JBIntSpinner myPhaseBudgetSpinner;
+
+        private PerformancePanel() {
+            super(new GridBagLayout());
+            GridBagConstraints gc = new GridBagConstraints();
+            gc.weightx = 1;
+            gc.weighty = 0;
+
+            gc.fill = GridBagConstraints.HORIZONTAL;
+            gc.anchor = GridBagConstraints.NORTHWEST;
+            gc.gridx = 0;
+            gc.gridy = 0;
+            gc.insets = JBUI.insets(0, 5, 2, 0);
+
+            // 多线程计算可达性
+            myParallelCheckbox = new JCheckBox("Compute reachability on multiple threads");
+            myParallelCheckbox.setSelected(PARALLEL_REACHABILITY);
+            myParallelCheckbox.addActionListener(e -> PARALLEL_REACHABILITY = myParallelCheckbox.isSelected());
+
+            add(myParallelCheckbox, gc);
+            gc.gridy++;
+
+            // 类的外部使用批量扫描
+            myBatchCheckbox = new JCheckBox("Search external class usages and qualified names in one pass over all files (faster; usages found only by plugin searches are missed, so more classes may be reported)");
+            myBatchCheckbox.setSelected(BATCH_EXTERNAL_USAGES);
+            myBatchCheckbox.addActionListener(e -> BATCH_EXTERNAL_USAGES = myBatchCheckbox.isSelected());
+
+            add(myBatchCheckbox, gc);
+            gc.gridy++;
+
+            // 外部使用搜索按开销排序
+            myCostOrderedCheckbox = new JCheckBox("Run cheap external usage searches first and skip elements already reachable");
+            myCostOrderedCheckbox.setSelected(COST_ORDERED_SEARCHES);
+            myCostOrderedCheckbox.addActionListener(e -> COST_ORDERED_SEARCHES = myCostOrderedCheckbox.isSelected());
+
+            add(myCostOrderedCheckbox, gc);
+            gc.gridy++;
+
+            // 一次性找出所有 deprecated 的元素，只有 deprecated 入口存在的时候才有
+            DeprecatedEntryPoint deprecatedEntryPoint = getDeprecatedEntryPoint();
+            if (deprecatedEntryPoint != null) {
+                JCheckBox precomputeCheckbox = new JCheckBox("Find all deprecated members once per run instead of checking each element");
+                precomputeCheckbox.setSelected(deprecatedEntryPoint.PRECOMPUTE_DEPRECATED);
+                precomputeCheckbox.addActionListener(e -> deprecatedEntryPoint.PRECOMPUTE_DEPRECATED = precomputeCheckbox.isSelected());
+
+                add(precomputeCheckbox, gc);
+                gc.gridy++;
+            }
+
+            // 时间预算，超时的元素当作被使用了，0 表示不限制
+            mySearchBudgetSpinner = new JBIntSpinner(SEARCH_TIME_BUDGET_SECONDS, 0, 3600);
+            mySearchBudgetSpinner.addChangeListener(e -> SEARCH_TIME_BUDGET_SECONDS = mySearchBudgetSpinner.getNumber());
+
+            add(createSpinnerRow("Time budget per external usage search, seconds (0 = unlimited; elements not searched in time are treated as used, so results can change):", mySearchBudgetSpinner), gc);
+            gc.gridy++;
+
+            myPhaseBudgetSpinner = new JBIntSpinner(PHASE_TIME_BUDGET_SECONDS, 0, 86400);
+            myPhaseBudgetSpinner.addChangeListener(e -> PHASE_TIME_BUDGET_SECONDS = myPhaseBudgetSpinner.getNumber());
+
+            gc.weighty = 1;
+            add(createSpinnerRow("Time budget per external usage phase, seconds (0 = unlimited; elements not searched in time are treated as used, so results can change):", myPhaseBudgetSpinner), gc);
+        }
+
+        @NotNull
+        private JPanel createSpinnerRow(@NotNull String label, @NotNull JBIntSpinner spinner) {
+            JPanel row = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+            row.add(new JBLabel(label));
+            row.add(Box.createHorizontalStrut(JBUI.scale(5)));
+            row.add(spinner);
+            return row;
+        }
     }
 
     private class UnusedVariablesGraphAnnotator extends RefGraphAnnotator {
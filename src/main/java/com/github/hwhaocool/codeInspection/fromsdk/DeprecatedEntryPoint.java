@@ -1,8 +1,12 @@
 // Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.github.hwhaocool.codeInspection.fromsdk;
 
+import com.github.hwhaocool.codeInspection.deadcode.DeprecatedMembers;
+import com.intellij.codeInspection.GlobalInspectionContext;
 import com.intellij.codeInspection.reference.EntryPoint;
 import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefManager;
+import com.intellij.codeInspection.reference.RefManagerImpl;
 import com.intellij.configurationStore.XmlSerializer;
 import com.intellij.java.JavaBundle;
 import com.intellij.psi.PsiDocCommentOwner;
@@ -10,9 +14,19 @@ import com.intellij.psi.PsiElement;
 import org.jdom.Element;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * 源码有改动：检查的时候一次性找出所有 deprecated 的元素，见 {@link DeprecatedMembers}
+ * @author YellowTail
+ * @since 2020-12-26
+ */
 public class DeprecatedEntryPoint extends EntryPoint {
     public boolean DEPRECATED_ENTRY_POINT = true;
 
+    /**
+     * 检查的时候先找出所有 deprecated 的元素，之后只查集合
+     */
+    public boolean PRECOMPUTE_DEPRECATED = true;
+
     @Override
     public void readExternal(Element element) {
         XmlSerializer.deserializeInto(element, this);
@@ -31,6 +45,11 @@ public class DeprecatedEntryPoint extends EntryPoint {
 
     @Override
     public boolean isEntryPoint(@NotNull RefElement refElement, @NotNull PsiElement psiElement) {
+        RefManager refManager = refElement.getRefManager();
+        GlobalInspectionContext context = refManager instanceof RefManagerImpl ? ((RefManagerImpl) refManager).getContext() : null;
+        if (PRECOMPUTE_DEPRECATED && context != null) {
+            return DeprecatedMembers.getInstance(context).isDeprecated(psiElement);
+        }
         return isEntryPoint(psiElement);
     }
 
@@ -11,10 +11,13 @@ import com.intellij.codeInspection.ex.GlobalInspectionContextImpl;
 import com.intellij.codeInspection.ex.InspectionRVContentProvider;
 import com.intellij.codeInspection.ex.InspectionToolWrapper;
 import com.intellij.codeInspection.ex.QuickFixAction;
+import com.intellij.codeInspection.ex.ScopeToolState;
+import com.intellij.codeInspection.ex.Tools;
 import com.intellij.codeInspection.reference.RefElement;
 import com.intellij.codeInspection.reference.RefEntity;
 import com.intellij.codeInspection.reference.RefJavaElement;
 import com.intellij.codeInspection.ui.InspectionResultsView;
+import com.intellij.codeInspection.ui.InspectionToolPresentation;
 import com.intellij.codeInspection.ui.InspectionTreeModel;
 import com.intellij.codeInspection.ui.InspectionTreeNode;
 import com.intellij.codeInspection.ui.RefElementNode;
@@ -24,6 +27,12 @@ import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
 public class DummyEntryPointsPresentation extends UnusedDeclarationPresentation {
     private static final RefEntryPointFilter myFilter = new RefEntryPointFilter();
     private QuickFixAction[] myQuickFixActions;
@@ -93,16 +102,41 @@ public class DummyEntryPointsPresentation extends UnusedDeclarationPresentation
         protected boolean applyFix(RefEntity @NotNull [] refElements) {
             final EntryPointsManager entryPointsManager =
                     getContext().getExtension(GlobalJavaInspectionContext.CONTEXT).getEntryPointsManager(getContext().getRefManager());
+            List<RefEntity> removed = new ArrayList<>();
             for (RefEntity refElement : refElements) {
                 if (refElement instanceof RefJavaElement && ((RefJavaElement) refElement).isEntry() && ((RefJavaElement) refElement).isPermanentEntry()) {
                     entryPointsManager.removeEntryPoint((RefElement) refElement);
+                    removed.add(refElement);
                 }
             }
 
+            if (!removed.isEmpty()) {
+                entryPointsChanged(removed, true);
+            }
             return true;
         }
     }
 
+    /**
+     * 入口列表不属于某一个检查，入口变了之后用到它的检查（{@link UnusedDeclarationInspectionBase#SHORT_NAME}）的结果都要更新
+     */
+    @NotNull
+    @Override
+    protected Collection<UnusedDeclarationPresentation> getLinkedPresentations() {
+        Set<UnusedDeclarationPresentation> presentations = new LinkedHashSet<>();
+        presentations.add(this);
+        Tools tools = getContext().getTools().get(UnusedDeclarationInspectionBase.SHORT_NAME);
+        if (tools != null) {
+            for (ScopeToolState state : tools.getTools()) {
+                InspectionToolPresentation presentation = getContext().getPresentation(state.getTool());
+                if (presentation instanceof UnusedDeclarationPresentation && presentation != this) {
+                    presentations.addAll(((UnusedDeclarationPresentation) presentation).getLinkedPresentations());
+                }
+            }
+        }
+        return presentations;
+    }
+
     @Override
     public void patchToolNode(@NotNull InspectionTreeNode node,
                               @NotNull InspectionRVContentProvider provider,
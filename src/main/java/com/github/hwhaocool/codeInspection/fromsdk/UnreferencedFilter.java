@@ -16,6 +16,7 @@
 
 package com.github.hwhaocool.codeInspection.fromsdk;
 
+import com.github.hwhaocool.codeInspection.deadcode.RefGraphSnapshot;
 import com.intellij.codeInspection.GlobalInspectionContext;
 import com.intellij.codeInspection.GlobalInspectionTool;
 import com.intellij.codeInspection.ex.GlobalInspectionContextBase;
@@ -50,7 +51,7 @@ public class UnreferencedFilter extends RefUnreachableFilter {
             return 0;
         }
 
-        if (refElement instanceof RefField && !isExternallyReferenced(refElement)) {
+        if (refElement instanceof RefField && !isExternallyReferenced(myContext, refElement)) {
             RefField refField = (RefField) refElement;
             if (refField.isUsedForReading() && !refField.isUsedForWriting()) {
                 return 1;
@@ -69,4 +70,11 @@ public class UnreferencedFilter extends RefUnreachableFilter {
     public static boolean isExternallyReferenced(RefElement element) {
         return element.getInReferences().stream().anyMatch(reference -> reference instanceof RefFile);
     }
+
+    /**
+     * 和 {@link #isExternallyReferenced(RefElement)} 一样，入边从 {@link RefGraphSnapshot} 里取
+     */
+    public static boolean isExternallyReferenced(@NotNull GlobalInspectionContext context, @NotNull RefElement element) {
+        return RefGraphSnapshot.getInstance(context).anyInReference(element, reference -> reference instanceof RefFile);
+    }
 }
@@ -1,9 +1,32 @@
 // Copyright 2000-2020 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.github.hwhaocool.codeInspection.fromsdk;
 
+import com.github.hwhaocool.codeInspection.deadcode.BatchClassUsageScanner;
+import com.github.hwhaocool.codeInspection.deadcode.CandidateIndex;
 import com.github.hwhaocool.codeInspection.deadcode.Constants;
-import com.github.hwhaocool.codeInspection.deadcode.RecursionField;
+import com.github.hwhaocool.codeInspection.deadcode.DeprecatedMembers;
+import com.github.hwhaocool.codeInspection.deadcode.EntryPointAnchors;
+import com.github.hwhaocool.codeInspection.deadcode.EntryPointBuffer;
+import com.github.hwhaocool.codeInspection.deadcode.EntryPointPatternIndex;
+import com.github.hwhaocool.codeInspection.deadcode.ExternalUsageScope;
+import com.github.hwhaocool.codeInspection.deadcode.IncrementalReachability;
+import com.github.hwhaocool.codeInspection.deadcode.MethodHierarchyIndex;
+import com.github.hwhaocool.codeInspection.deadcode.ModuleDependents;
+import com.github.hwhaocool.codeInspection.deadcode.ParallelCodeScanner;
+import com.github.hwhaocool.codeInspection.deadcode.QualifiedNameScanner;
+import com.github.hwhaocool.codeInspection.deadcode.ReachabilityEngine;
+import com.github.hwhaocool.codeInspection.deadcode.RecursionChain;
 import com.github.hwhaocool.codeInspection.deadcode.RecursionReachable;
+import com.github.hwhaocool.codeInspection.deadcode.RefClassHierarchy;
+import com.github.hwhaocool.codeInspection.deadcode.RefElementIndex;
+import com.github.hwhaocool.codeInspection.deadcode.RefGraphSnapshot;
+import com.github.hwhaocool.codeInspection.deadcode.RunStatistics;
+import com.github.hwhaocool.codeInspection.deadcode.SearchBudget;
+import com.github.hwhaocool.codeInspection.deadcode.UsageSearchScheduler;
+import com.github.hwhaocool.codeInspection.deadcode.UseScopeMinimizer;
+import com.github.hwhaocool.codeInspection.deadcode.VerdictCache;
+import com.github.hwhaocool.codeInspection.deadcode.VisitedRefClasses;
+import com.github.hwhaocool.codeInspection.deadcode.WordIndexPrefilter;
 import com.github.hwhaocool.codeInspection.fromsdk.unusedSymbol.UnusedSymbolLocalInspectionImpl;
 import com.intellij.analysis.AnalysisBundle;
 import com.intellij.analysis.AnalysisScope;
@@ -32,6 +55,7 @@ import com.intellij.codeInspection.reference.RefJavaElement;
 import com.intellij.codeInspection.reference.RefJavaElementImpl;
 import com.intellij.codeInspection.reference.RefJavaVisitor;
 import com.intellij.codeInspection.reference.RefManager;
+import com.intellij.codeInspection.reference.RefManagerImpl;
 import com.intellij.codeInspection.reference.RefMethod;
 import com.intellij.codeInspection.reference.RefMethodImpl;
 import com.intellij.codeInspection.reference.RefUtil;
@@ -40,6 +64,7 @@ import com.intellij.codeInspection.util.RefFilter;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.util.InvalidDataException;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.WriteExternalException;
@@ -54,8 +79,9 @@ import com.intellij.psi.PsiModifier;
 import com.intellij.psi.PsiModifierListOwner;
 import com.intellij.psi.PsiType;
 import com.intellij.psi.impl.PsiClassImplUtil;
-import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.util.PsiMethodUtil;
+import com.intellij.psi.util.PsiModificationTracker;
+import com.intellij.util.ConcurrencyUtil;
 import com.intellij.util.containers.ContainerUtil;
 import org.jdom.Element;
 import org.jetbrains.annotations.NotNull;
@@ -69,6 +95,7 @@ import org.jetbrains.uast.UMethod;
 import org.jetbrains.uast.UParameter;
 import org.jetbrains.uast.UastVisibility;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -77,6 +104,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 /**
  * 原版代码来自 com.intellij.codeInspection.deadCode.UnusedDeclarationInspectionBase， 修改了很多
@@ -92,6 +122,32 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
     public boolean ADD_NONJAVA_TO_ENTRIES = true;
     private boolean TEST_ENTRY_POINTS = true;
 
+    /**
+     * 可达性用 {@link ParallelCodeScanner} 多线程计算，结果和串行的一样
+     */
+    public boolean PARALLEL_REACHABILITY = false;
+
+    /**
+     * 类的外部使用一次扫描所有文件找出来（{@link BatchClassUsageScanner}），不再每个类一次 ReferencesSearch；
+     * 非 Java 文件里的全限定名也一次找出来（{@link QualifiedNameScanner}）。只认文本里写出来的引用，默认关闭
+     */
+    public boolean BATCH_EXTERNAL_USAGES = false;
+
+    /**
+     * 外部使用搜索自己执行（{@link UsageSearchScheduler}），按开销从小到大，已经可达的跳过，默认关闭
+     */
+    public boolean COST_ORDERED_SEARCHES = false;
+
+    /**
+     * 每个外部使用搜索最多用多少秒，超时的元素当作被使用了（{@link SearchBudget}），0 表示不限制
+     */
+    public int SEARCH_TIME_BUDGET_SECONDS = 0;
+
+    /**
+     * 每一轮外部使用搜索最多用多少秒，时间用完之后还没有结论的元素都当作被使用了，0 表示不限制
+     */
+    public int PHASE_TIME_BUDGET_SECONDS = 0;
+
 
     /**
      * 这个是重中之重， intellij 对插件 shortName 的校验很严格，包括从上下文拿到插件对象，有的地方也是通过 shortName 来实现的，一定要修改，且要统一
@@ -107,8 +163,25 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
     protected static final Key<Set<RefElement>> PROCESSED_SUSPICIOUS_ELEMENTS_KEY = Key.create("java.unused.declaration.processed.suspicious.elements");
     protected static final Key<Integer> PHASE_KEY = Key.create("java.unused.declaration.phase");
 
+    /**
+     * 平台自带的 deprecated 入口，构造的时候换成 {@link DeprecatedEntryPoint}
+     */
+    private static final String PLATFORM_DEPRECATED_ENTRY_POINT = "com.intellij.codeInspection.deadCode.DeprecatedEntryPoint";
+
+    private static final Key<VerdictCache<RefElement>> REF_ENTRY_POINT_VERDICTS_KEY = Key.create("yellow.vo.ref.entry.point.verdicts");
+
     private final boolean myEnabledInEditor;
 
+    /**
+     * PsiElement 的入口判断结果，工具实例属于某一个 profile，切换 profile 之后不会用到别的 profile 的结果
+     */
+    private final VerdictCache<PsiElement> myPsiEntryPointVerdicts = new VerdictCache<>();
+
+    /**
+     * 入口相关设置的修改计数，见 {@link #entryPointSettingsChanged}
+     */
+    private final AtomicLong myEntryPointSettingsModificationCount = new AtomicLong();
+
     @SuppressWarnings("TestOnlyProblems")
     public UnusedDeclarationInspectionBase() {
         this(!ApplicationManager.getApplication().isUnitTestMode());
@@ -132,6 +205,13 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
         List<EntryPoint> deadCodeAddIns = new ArrayList<>(extensions.size());
         for (EntryPoint entryPoint : extensions) {
             try {
+                if (isPlatformDeprecatedEntryPoint(entryPoint)) {
+                    // 换成改过的版本，设置的字段名一样，原来的配置可以直接读
+                    DeprecatedEntryPoint deprecatedEntryPoint = new DeprecatedEntryPoint();
+                    deprecatedEntryPoint.setSelected(entryPoint.isSelected());
+                    deadCodeAddIns.add(deprecatedEntryPoint);
+                    continue;
+                }
                 deadCodeAddIns.add(entryPoint.clone());
             } catch (Exception e) {
                 LOG.error(e);
@@ -142,6 +222,28 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
         myEnabledInEditor = enabledInEditor;
     }
 
+    /**
+     * 平台自带的 DeprecatedEntryPoint 按全名认，别的插件里同名的类不算
+     */
+    private static boolean isPlatformDeprecatedEntryPoint(@NotNull EntryPoint entryPoint) {
+        return PLATFORM_DEPRECATED_ENTRY_POINT.equals(entryPoint.getClass().getName());
+    }
+
+    /**
+     * @return 替换了平台版本的 {@link DeprecatedEntryPoint}，平台没有注册的话为 null
+     * @author YellowTail
+     * @since 2020-12-30
+     */
+    @Nullable
+    public DeprecatedEntryPoint getDeprecatedEntryPoint() {
+        for (EntryPoint extension : myExtensions) {
+            if (extension instanceof DeprecatedEntryPoint) {
+                return (DeprecatedEntryPoint) extension;
+            }
+        }
+        return null;
+    }
+
     protected UnusedSymbolLocalInspectionBase createUnusedSymbolLocalInspection() {
         return new UnusedSymbolLocalInspectionImpl();
     }
@@ -164,12 +266,47 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
         return ADD_NONJAVA_TO_ENTRIES;
     }
 
+    private boolean isParallelReachabilityEnabled() {
+        return PARALLEL_REACHABILITY;
+    }
+
+    private boolean isBatchExternalUsagesEnabled() {
+        return BATCH_EXTERNAL_USAGES;
+    }
+
+    private boolean isCostOrderedSearchesEnabled() {
+        // 平台排队的搜索没法单独设超时，有时间预算的话搜索自己执行
+        return COST_ORDERED_SEARCHES || isSearchBudgetEnabled();
+    }
+
+    private boolean isSearchBudgetEnabled() {
+        return SEARCH_TIME_BUDGET_SECONDS > 0 || PHASE_TIME_BUDGET_SECONDS > 0;
+    }
+
+    @NotNull
+    private SearchBudget createSearchBudget() {
+        if (!isSearchBudgetEnabled()) {
+            return SearchBudget.UNLIMITED;
+        }
+        return new SearchBudget(TimeUnit.SECONDS.toMillis(SEARCH_TIME_BUDGET_SECONDS), TimeUnit.SECONDS.toMillis(PHASE_TIME_BUDGET_SECONDS));
+    }
+
     public boolean isTestEntryPoints() {
         return TEST_ENTRY_POINTS;
     }
 
     public void setTestEntryPoints(boolean testEntryPoints) {
         TEST_ENTRY_POINTS = testEntryPoints;
+        entryPointSettingsChanged();
+    }
+
+    /**
+     * 入口相关的设置（开关、EntryPoint 扩展、EntryPointsManager 里的注解、类、入口）改了之后调用，之前缓存的入口判断结果作废
+     * @author YellowTail
+     * @since 2020-12-30
+     */
+    public void entryPointSettingsChanged() {
+        myEntryPointSettingsModificationCount.incrementAndGet();
     }
 
     @Override
@@ -182,6 +319,7 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
 
         final String testEntriesAttr = node.getAttributeValue("test_entries");
         TEST_ENTRY_POINTS = testEntriesAttr == null || Boolean.parseBoolean(testEntriesAttr);
+        entryPointSettingsChanged();
     }
 
     @Override
@@ -350,10 +488,20 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
                               @NotNull final GlobalInspectionContext globalContext,
                               @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor) {
 
+        // 同一个上下文重新运行的时候，丢掉上一次的数据
+        releaseRunData(globalContext);
+
+        // 配置的入口注解、类在遍历之前一次算好，遍历里判断入口的时候直接查
+        EntryPointPatternIndex.getInstance(globalContext);
+
+        // 顺便建立候选索引，后面的遍历都用它
+        CandidateIndex.Builder candidates = CandidateIndex.builder(globalContext, this);
+
         globalContext.getRefManager().iterate(new RefJavaVisitor() {
             @Override
             public void visitElement(@NotNull final RefEntity refEntity) {
 
+                candidates.accept(refEntity);
 
                 if (refEntity instanceof RefElementImpl) {
                     final RefElementImpl refElement = (RefElementImpl) refEntity;
@@ -375,12 +523,34 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
                 }
             }
         });
+        candidates.install();
+
+        // 引用图到这里已经建完了，之后只会因为删除元素变少
+        RefGraphSnapshot.build(globalContext);
 
         globalContext.putUserData(PHASE_KEY, 1);
         globalContext.putUserData(PROCESSED_SUSPICIOUS_ELEMENTS_KEY, new HashSet<>());
     }
 
+    /**
+     * 结果按元素缓存在当前检查的上下文里（过滤器、结果显示会对同一个元素问很多次），
+     * 代码或者入口相关的设置有修改时失效，见 {@link #getVerdictStamp}
+     */
     public boolean isEntryPoint(@NotNull RefElement owner) {
+        RefManager refManager = owner.getRefManager();
+        GlobalInspectionContext context = refManager instanceof RefManagerImpl ? ((RefManagerImpl) refManager).getContext() : null;
+        if (context == null) {
+            return computeIsRefEntryPoint(owner, null);
+        }
+
+        VerdictCache<RefElement> verdicts = ConcurrencyUtil.computeIfAbsent(context, REF_ENTRY_POINT_VERDICTS_KEY, VerdictCache::new);
+        return verdicts.get(owner, getVerdictStamp(refManager.getProject()), element -> computeIsRefEntryPoint(element, context));
+    }
+
+    /**
+     * @param context 有上下文的时候，EntryPointsManager 里配置的注解、类从 {@link EntryPointPatternIndex} 里查
+     */
+    private boolean computeIsRefEntryPoint(@NotNull RefElement owner, @Nullable GlobalInspectionContext context) {
 
         PsiElement element = owner.getPsiElement();
         if (owner instanceof RefJavaElement) {
@@ -393,8 +563,12 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
             return true;
         }
         if (element instanceof PsiModifierListOwner) {
-            final EntryPointsManager entryPointsManager = EntryPointsManager.getInstance(element.getProject());
-            if (entryPointsManager.isEntryPoint(element)) {
+            EntryPointPatternIndex patternIndex = context == null ? null : EntryPointPatternIndex.getInstance(context);
+            if (patternIndex != null) {
+                if (patternIndex.isEntryPoint(element)) {
+                    return true;
+                }
+            } else if (EntryPointsManager.getInstance(element.getProject()).isEntryPoint(element)) {
                 return true;
             }
         }
@@ -419,23 +593,33 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
         return false;
     }
 
+    /**
+     * 结果按元素缓存在这个工具实例上（每个 profile 一个），代码、依赖或者入口相关的设置有修改时失效，见 {@link #getVerdictStamp}
+     */
     public boolean isEntryPoint(@NotNull PsiElement element) {
+        return myPsiEntryPointVerdicts.get(element, getVerdictStamp(element.getProject()), this::computeIsEntryPoint);
+    }
+
+    private boolean computeIsEntryPoint(@NotNull PsiElement element) {
 
         final Project project = element.getProject();
-        final JavaPsiFacade psiFacade = JavaPsiFacade.getInstance(project);
         if (element instanceof PsiMethod && isAddMainsEnabled() && PsiClassImplUtil.isMainOrPremainMethod((PsiMethod) element)) {
             return true;
         }
         if (element instanceof PsiClass) {
             PsiClass aClass = (PsiClass) element;
-            final PsiClass applet = psiFacade.findClass("java.applet.Applet", GlobalSearchScope.allScope(project));
-            if (isAddAppletEnabled() && applet != null && aClass.isInheritor(applet, true)) {
-                return true;
+            if (isAddAppletEnabled()) {
+                final PsiClass applet = EntryPointAnchors.getInstance(project).getApplet();
+                if (applet != null && aClass.isInheritor(applet, true)) {
+                    return true;
+                }
             }
 
-            final PsiClass servlet = psiFacade.findClass("javax.servlet.Servlet", GlobalSearchScope.allScope(project));
-            if (isAddServletEnabled() && servlet != null && aClass.isInheritor(servlet, true)) {
-                return true;
+            if (isAddServletEnabled()) {
+                final PsiClass servlet = EntryPointAnchors.getInstance(project).getServlet();
+                if (servlet != null && aClass.isInheritor(servlet, true)) {
+                    return true;
+                }
             }
             if (isAddMainsEnabled()) {
                 if (hasMainMethodDeep(aClass)) {
@@ -457,6 +641,40 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
         return RefUtil.isImplicitUsage(element);
     }
 
+    /**
+     * @return 能影响入口判断的所有东西：代码、依赖、入口相关的设置，每样一个 long，由 VerdictCache 逐个比较
+     * <p>
+     * EntryPointsManager 的注解、类在别的地方（比如平台自己的设置）也能改，没有修改计数，
+     * 用它们的数量（高 32 位）和内容的 hash（低 32 位）兜底
+     */
+    private long @NotNull [] getVerdictStamp(@NotNull Project project) {
+        long annotations = 0;
+        long patterns = 0;
+        EntryPointsManager entryPointsManager = EntryPointsManager.getInstance(project);
+        if (entryPointsManager instanceof EntryPointsManagerBase) {
+            EntryPointsManagerBase managerBase = (EntryPointsManagerBase) entryPointsManager;
+            annotations = sizeAndHash(managerBase.ADDITIONAL_ANNOTATIONS.size(), managerBase.ADDITIONAL_ANNOTATIONS.hashCode());
+
+            int patternsHash = 1;
+            for (EntryPointsManagerBase.ClassPattern pattern : managerBase.getPatterns()) {
+                patternsHash = 31 * patternsHash + Objects.hash(pattern.pattern, pattern.method, pattern.hierarchically);
+            }
+            patterns = sizeAndHash(managerBase.getPatterns().size(), patternsHash);
+        }
+
+        return new long[]{
+                PsiModificationTracker.SERVICE.getInstance(project).getModificationCount(),
+                ProjectRootManager.getInstance(project).getModificationCount(),
+                myEntryPointSettingsModificationCount.get(),
+                annotations,
+                patterns
+        };
+    }
+
+    private static long sizeAndHash(int size, int hash) {
+        return (long) size << 32 | hash & 0xFFFFFFFFL;
+    }
+
     private static boolean hasMainMethodDeep(PsiClass aClass) {
         if (PsiMethodUtil.hasMainMethod(aClass)) {
             return true;
@@ -506,7 +724,8 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
                                                @NotNull GlobalInspectionContext globalContext,
                                                @NotNull ProblemDescriptionsProcessor problemDescriptionsProcessor) {
 
-        checkForReachableRefs(globalContext);
+        // 阶段之间只会新增临时入口，不用每次都全部重算
+        checkForReachableRefsIncrementally(globalContext);
 
         int phase = Objects.requireNonNull(globalContext.getUserData(PHASE_KEY));
 
@@ -519,20 +738,23 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
         LOG.assertTrue(processedSuspicious != null, "phase: " + phase);
 
         final boolean[] requestAdded = {false};
-        globalContext.getRefManager().iterate(new RefJavaVisitor() {
+
+        // 批量模式下类先收集起来，遍历完一起扫描
+        final BatchClassUsageScanner batchScanner = isBatchExternalUsagesEnabled() ? new BatchClassUsageScanner(globalContext) : null;
+        final QualifiedNameScanner qualifiedNameScanner = isBatchExternalUsagesEnabled() ? new QualifiedNameScanner(globalContext) : null;
+        // 按开销排序的模式下搜索先收集起来，遍历完一起执行
+        final UsageSearchScheduler scheduler = isCostOrderedSearchesEnabled() ? new UsageSearchScheduler(globalContext) : null;
+
+        // 只看还可疑的类、方法、字段，不用每个阶段都遍历整个 RefManager
+        CandidateIndex.getInstance(globalContext, this).forEachSuspicious(new Consumer<RefJavaElement>() {
             @Override
-            public void visitElement(@NotNull RefEntity refEntity) {
-                if (!(refEntity instanceof RefJavaElement)) {
-                    //跳过文件类型、 package的
-                    return;
-                }
-                if (refEntity instanceof RefClass && ((RefClass) refEntity).isAnonymous()) {
+            public void accept(@NotNull RefJavaElement refElement) {
+                if (refElement instanceof RefClass && ((RefClass) refElement).isAnonymous()) {
                     //跳过匿名类
                     return;
                 }
-                RefJavaElement refElement = (RefJavaElement) refEntity;
                 if (filter.accepts(refElement) && !processedSuspicious.contains(refElement)) {
-                    refEntity.accept(new RefJavaVisitor() {
+                    refElement.accept(new RefJavaVisitor() {
 
                         @Override
                         public void visitField(@NotNull final RefField refField) {
@@ -543,11 +765,17 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
                             UField uField = refField.getUastElement();
                             if (uField != null && isSerializationImplicitlyUsedField(uField)) {
                                 getEntryPointsManager(globalContext).addEntryPoint(refField, false);
-                            } else {
-                                globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT).enqueueFieldUsagesProcessor(refField, psiReference -> {
-                                    getEntryPointsManager(globalContext).addEntryPoint(refField, false);
-                                    return false;
-                                });
+                            } else if (isExternalSearchNeeded(globalContext, refField)) {
+                                // 外部不可能有使用的不用搜
+                                if (scheduler != null) {
+                                    scheduler.add(UsageSearchScheduler.Kind.FIELD_USAGES, refField, uField == null ? null : uField.getJavaPsi(),
+                                            () -> EntryPointBuffer.getInstance(globalContext).add(refField));
+                                } else {
+                                    globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT).enqueueFieldUsagesProcessor(refField, psiReference -> {
+                                        EntryPointBuffer.getInstance(globalContext).add(refField);
+                                        return false;
+                                    });
+                                }
                                 requestAdded[0] = true;
                             }
                         }
@@ -558,6 +786,10 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
 //                            printName("UnusedDeclarationInspectionBase queryExternalUsagesRequests visitMethod  %s", refMethod);
 
                             processedSuspicious.add(refMethod);
+                            if (MethodHierarchyIndex.getInstance(globalContext).isDerivedFromSearched(refMethod)) {
+                                // 父方法已经搜索过了，和原来 getDerivedMethods() 加到已处理集合里一样跳过
+                                return;
+                            }
                             if (refMethod instanceof RefImplicitConstructor) {
                                 RefClass ownerClass = refMethod.getOwnerClass();
                                 LOG.assertTrue(ownerClass != null);
@@ -573,9 +805,10 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
                             if (uMethod != null && isSerializablePatternMethod(uMethod, refMethod.getOwnerClass())) {
                                 getEntryPointsManager(globalContext).addEntryPoint(refMethod, false);
                             } else if (!refMethod.isExternalOverride() && !PsiModifier.PRIVATE.equals(refMethod.getAccessModifier())) {
-                                processedSuspicious.addAll(refMethod.getDerivedMethods());
-                                enqueueMethodUsages(globalContext, refMethod);
-                                requestAdded[0] = true;
+                                MethodHierarchyIndex.getInstance(globalContext).markSearched(refMethod);
+                                if (isExternalSearchNeeded(globalContext, refMethod) && enqueueMethodUsages(globalContext, refMethod, scheduler)) {
+                                    requestAdded[0] = true;
+                                }
                             }
                         }
 
@@ -592,35 +825,45 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
                                 return;
                             }
 
-                            // 派生类
-                            globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT)
-                                    .enqueueDerivedClassesProcessor(refClass, inheritor -> {
-
-                                getEntryPointsManager(globalContext).addEntryPoint(refClass, false);
-
-                                return false;
-                            });
+                            // 使用范围和外部范围没有交集的，外部不可能有派生类和使用
+                            boolean outsideExternalScope = UseScopeMinimizer.getInstance(globalContext).isOutsideExternalScope(refClass);
 
+                            UClass uClass = refClass.getUastElement();
+                            PsiClass psiClass = uClass == null ? null : uClass.getJavaPsi();
 
-                            // 计算 class 的 使用情况
-                            globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT)
-                                    .enqueueClassUsagesProcessor(refClass, psiReference -> {
-
-                                printName("UnusedDeclarationInspectionBase class_has_been_used visitClass  %s", refClass);
-
-                                // 这里的 false, 会让 com.intellij.codeInspection.ex.EntryPointsManagerBase.addEntryPoint 383行
-                                // 执行 this.myTemporaryEntryPoints.add(newEntryPoint);
-                                // 然后在 com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase.checkForReachableRefs 里执行 entry.accept()
-                                // 执行之后，这些就会对象就被识别成 可达， reachable
-                                getEntryPointsManager(globalContext).addEntryPoint(refClass, false);
+                            // 派生类
+                            if (!outsideExternalScope) {
+                                if (scheduler != null) {
+                                    scheduler.add(UsageSearchScheduler.Kind.DERIVED_CLASSES, refClass, psiClass,
+                                            () -> EntryPointBuffer.getInstance(globalContext).add(refClass));
+                                } else {
+                                    globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT)
+                                            .enqueueDerivedClassesProcessor(refClass, inheritor -> {
+
+                                        EntryPointBuffer.getInstance(globalContext).add(refClass);
+
+                                        return false;
+                                    });
+                                }
+                            }
 
-                                // 通过方法 getOutTypeReferences 得到字段的 class 类型
-                                // 需要考虑嵌套
-                                RECURSION_REACHABLE.setReachable(globalContext, refClass, PROCESSED_REFCLASS);
 
-                                // 这个返回值没看出来有什么作用
-                                return false;
-                            });
+                            // 计算 class 的 使用情况，名字在外部没有出现过的不用搜
+                            if (!outsideExternalScope && !WordIndexPrefilter.hasNoExternalOccurrences(globalContext, refClass)) {
+                                if (batchScanner != null) {
+                                    batchScanner.add(refClass);
+                                } else if (scheduler != null) {
+                                    scheduler.add(UsageSearchScheduler.Kind.CLASS_USAGES, refClass, psiClass, () -> markClassUsed(globalContext, refClass));
+                                } else {
+                                    globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT)
+                                            .enqueueClassUsagesProcessor(refClass, psiReference -> {
+                                        markClassUsed(globalContext, refClass);
+
+                                        // 这个返回值没看出来有什么作用
+                                        return false;
+                                    });
+                                }
+                            }
 
                             queryQualifiedNameUsages(refClass);
                             requestAdded[0] = true;
@@ -630,16 +873,12 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
                         public void queryQualifiedNameUsages(@NotNull RefClass refClass) {
                             if (firstPhase && isAddNonJavaUsedEnabled()) {
 
-                                globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT)
-                                        .enqueueQualifiedNameOccurrencesProcessor(refClass, () -> {
-
-                                    EntryPointsManager entryPointsManager = getEntryPointsManager(globalContext);
-                                    entryPointsManager.addEntryPoint(refClass, false);
-
-                                    for (RefMethod constructor : refClass.getConstructors()) {
-                                        entryPointsManager.addEntryPoint(constructor, false);
-                                    }
-                                });
+                                if (qualifiedNameScanner != null) {
+                                    qualifiedNameScanner.add(refClass);
+                                } else {
+                                    globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT)
+                                            .enqueueQualifiedNameOccurrencesProcessor(refClass, () -> markQualifiedNameUsed(globalContext, refClass));
+                                }
 
                                 //references from java-like are already in graph or
                                 //they would be checked during GlobalJavaInspectionContextImpl.performPostRunActivities
@@ -656,9 +895,24 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
             }
         });
 
+        // 这一轮的时间预算从这里开始算，三种扫描共用
+        final SearchBudget budget = createSearchBudget();
+        if (batchScanner != null && !batchScanner.isEmpty()) {
+            batchScanner.run(refClass -> markClassUsed(globalContext, refClass), budget);
+        }
+        if (qualifiedNameScanner != null && !qualifiedNameScanner.isEmpty()) {
+            qualifiedNameScanner.run(refClass -> markQualifiedNameUsed(globalContext, refClass), budget);
+        }
+        if (scheduler != null && !scheduler.isEmpty()) {
+            // 开销大的搜索之前先把已经找到的入口算进可达性，已经可达的就不用搜了
+            scheduler.run(() -> checkForReachableRefsIncrementally(globalContext), budget);
+        }
+
         if (!requestAdded[0]) {
             if (phase == 2) {
                 globalContext.putUserData(PROCESSED_SUSPICIOUS_ELEMENTS_KEY, null);
+                VisitedRefClasses.release(globalContext);
+                RefClassHierarchy.release(globalContext);
                 return false;
             } else {
                 globalContext.putUserData(PHASE_KEY, 2);
@@ -668,22 +922,88 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
         return true;
     }
 
+    /**
+     * 外部有没有可能用到这个元素：最小使用范围和外部范围有交集，并且名字在外部出现过
+     * @param globalContext 上下文
+     * @param refElement 方法或者字段
+     * @return 需要排队搜索的时候返回 true
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    private static boolean isExternalSearchNeeded(@NotNull GlobalInspectionContext globalContext, @NotNull RefJavaElement refElement) {
+        return !UseScopeMinimizer.getInstance(globalContext).isOutsideExternalScope(refElement)
+                && !WordIndexPrefilter.hasNoExternalOccurrences(globalContext, refElement);
+    }
+
+    /**
+     * 类在外部被使用了，标记成入口
+     * @param globalContext 上下文
+     * @param refClass 被使用的类
+     * @author YellowTail
+     * @since 2020-12-27
+     */
+    private static void markClassUsed(@NotNull GlobalInspectionContext globalContext, @NotNull RefClass refClass) {
+        // 先放到 EntryPointBuffer，checkForReachableRefs 之前以 addEntryPoint(refClass, false) 加进去，
+        // 这里的 false, 会让 com.intellij.codeInspection.ex.EntryPointsManagerBase.addEntryPoint 383行
+        // 执行 this.myTemporaryEntryPoints.add(newEntryPoint);
+        // 然后在 com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase.checkForReachableRefs 里执行 entry.accept()
+        // 执行之后，这些就会对象就被识别成 可达， reachable
+        EntryPointBuffer.getInstance(globalContext).add(refClass);
+
+        // 通过字段、getter、setter、父类、注解等得到关联的 class 类型（见 RecursionEdgeProvider）
+        // 需要考虑嵌套
+        RECURSION_REACHABLE.setReachable(globalContext, refClass, VisitedRefClasses.getInstance(globalContext));
+    }
+
+    /**
+     * 类的全限定名在非 Java 文件里出现了，类和构造方法都标记成入口
+     * @param globalContext 上下文
+     * @param refClass 类
+     * @author YellowTail
+     * @since 2020-12-28
+     */
+    private static void markQualifiedNameUsed(@NotNull GlobalInspectionContext globalContext, @NotNull RefClass refClass) {
+        EntryPointBuffer buffer = EntryPointBuffer.getInstance(globalContext);
+        buffer.add(refClass);
+
+        for (RefMethod constructor : refClass.getConstructors()) {
+            buffer.add(constructor);
+        }
+    }
+
     private static boolean isSerializablePatternMethod(@NotNull UMethod psiMethod, RefClass refClass) {
         return isReadObjectMethod(psiMethod, refClass) || isWriteObjectMethod(psiMethod, refClass) || isReadResolveMethod(psiMethod, refClass) ||
                 isWriteReplaceMethod(psiMethod, refClass) || isExternalizableNoParameterConstructor(psiMethod, refClass);
     }
 
-    private static void enqueueMethodUsages(GlobalInspectionContext globalContext, final RefMethod refMethod) {
-        if (refMethod.getSuperMethods().isEmpty()) {
-            globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT).enqueueMethodUsagesProcessor(refMethod, psiReference -> {
-                getEntryPointsManager(globalContext).addEntryPoint(refMethod, false);
+    /**
+     * 搜索方法最顶层父方法的使用，每个顶层父方法整次检查只排队一次
+     * @return 有新排队的搜索返回 true
+     */
+    private static boolean enqueueMethodUsages(GlobalInspectionContext globalContext, final RefMethod refMethod,
+                                               @Nullable UsageSearchScheduler scheduler) {
+        MethodHierarchyIndex hierarchy = MethodHierarchyIndex.getInstance(globalContext);
+        boolean enqueued = false;
+        for (RefMethod root : hierarchy.getRootMethods(refMethod)) {
+            if (!hierarchy.markEnqueued(root)) {
+                RunStatistics.getInstance(globalContext).increment("method usage searches shared by root");
+                continue;
+            }
+            RunStatistics.getInstance(globalContext).increment("method usage searches enqueued");
+            if (scheduler != null) {
+                UMethod uMethod = (UMethod) root.getUastElement();
+                scheduler.add(UsageSearchScheduler.Kind.METHOD_USAGES, root, uMethod == null ? null : uMethod.getJavaPsi(),
+                        () -> EntryPointBuffer.getInstance(globalContext).add(root));
+                enqueued = true;
+                continue;
+            }
+            globalContext.getExtension(GlobalJavaInspectionContext.CONTEXT).enqueueMethodUsagesProcessor(root, psiReference -> {
+                EntryPointBuffer.getInstance(globalContext).add(root);
                 return false;
             });
-        } else {
-            for (RefMethod refSuper : refMethod.getSuperMethods()) {
-                enqueueMethodUsages(globalContext, refSuper);
-            }
+            enqueued = true;
         }
+        return enqueued;
     }
 
     @Override
@@ -693,44 +1013,129 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
 
 
     void checkForReachableRefs(@NotNull final GlobalInspectionContext context) {
-        CodeScanner codeScanner = new CodeScanner();
+        flushEntryPointBuffer(context);
 
         // Cleanup previous reachability information.
         RefManager refManager = context.getRefManager();
-        refManager.iterate(new RefJavaVisitor() {
-            @Override
-            public void visitElement(@NotNull RefEntity refEntity) {
-                if (refEntity instanceof RefJavaElementImpl) {
-                    final RefJavaElementImpl refElement = (RefJavaElementImpl) refEntity;
-                    if (!((GlobalInspectionContextBase) context).isToCheckMember(refElement, UnusedDeclarationInspectionBase.this)) {
-                        return;
-                    }
-                    refElement.setReachable(false);
-                }
-            }
-        });
+        CandidateIndex.getInstance(context, this).resetReachability();
+
+        RefGraphSnapshot snapshot = RefGraphSnapshot.getInstance(context);
+        ReachabilityEngine engine = isParallelReachabilityEnabled()
+                ? new ParallelCodeScanner(snapshot)
+                : new CodeScanner(snapshot);
 
         // getEntryPointsManager(context).getEntryPoints(refManager) 已经可以得到 有被使用的类
-        for (RefElement entry : getEntryPointsManager(context).getEntryPoints(refManager)) {
-            entry.accept(codeScanner);
+        scanNewEntryPoints(context, IncrementalReachability.start(context, engine), getEntryPointsManager(context).getEntryPoints(refManager));
+    }
+
+    /**
+     * 和 {@link #checkForReachableRefs} 一样，但是保留上一次的结果，只从之后新增的入口继续标记
+     * <p>
+     * 只能在入口只增不减的时候用，比如 queryExternalUsagesRequests 的各个阶段之间
+     * @param context 上下文
+     * @author YellowTail
+     * @since 2020-12-22
+     */
+    void checkForReachableRefsIncrementally(@NotNull final GlobalInspectionContext context) {
+        IncrementalReachability reachability = IncrementalReachability.getInstance(context);
+        if (reachability == null) {
+            checkForReachableRefs(context);
+            return;
+        }
+
+        flushEntryPointBuffer(context);
+        scanNewEntryPoints(context, reachability, getEntryPointsManager(context).getEntryPoints(context.getRefManager()));
+    }
+
+    /**
+     * 搜索回调里攒下的临时入口一次性加到 EntryPointsManager
+     */
+    private static void flushEntryPointBuffer(@NotNull GlobalInspectionContext context) {
+        int flushed = EntryPointBuffer.getInstance(context).flush(getEntryPointsManager(context));
+        RunStatistics.getInstance(context).add("buffered entry points flushed", flushed);
+    }
+
+    /**
+     * 每个外部使用搜索阶段都会调一次，耗时记到 RunStatistics 里，检查结束时汇总打一次日志
+     */
+    private static void scanNewEntryPoints(@NotNull GlobalInspectionContext context,
+                                           @NotNull IncrementalReachability reachability,
+                                           RefElement @NotNull [] entryPoints) {
+        long start = System.currentTimeMillis();
+        int scanned = reachability.scanNewEntryPoints(entryPoints);
+        long elapsed = System.currentTimeMillis() - start;
+
+        RunStatistics statistics = RunStatistics.getInstance(context);
+        statistics.increment("reachability scans");
+        statistics.add("reachability entry points scanned", scanned);
+        statistics.add("reachability scan ms", elapsed);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(String.format("reachability: %d new entry points scanned in %d ms", scanned, elapsed));
         }
+    }
 
-        while (codeScanner.newlyInstantiatedClassesCount() != 0) {
-            codeScanner.cleanInstantiatedClassesCount();
-            codeScanner.processDelayedMethods();
+    /**
+     * 释放这次检查放在上下文里的数据，检查结果关闭的时候调用
+     * @param context 上下文
+     * @author YellowTail
+     * @since 2020-12-16
+     */
+    public static void releaseRunData(@NotNull final GlobalInspectionContext context) {
+        context.putUserData(PROCESSED_SUSPICIOUS_ELEMENTS_KEY, null);
+        VisitedRefClasses.release(context);
+        RefClassHierarchy.release(context);
+        IncrementalReachability.release(context);
+        RefGraphSnapshot.release(context);
+        CandidateIndex.release(context);
+        EntryPointPatternIndex.release(context);
+        DeprecatedMembers.release(context);
+        UseScopeMinimizer.release(context);
+        MethodHierarchyIndex.release(context);
+        EntryPointBuffer.release(context);
+        ModuleDependents.release(context);
+        ExternalUsageScope.release(context);
+
+        VerdictCache<RefElement> verdicts = context.getUserData(REF_ENTRY_POINT_VERDICTS_KEY);
+        if (verdicts != null) {
+            RunStatistics statistics = RunStatistics.getInstance(context);
+            statistics.add("entry point verdict hits", verdicts.getHits());
+            statistics.add("entry point verdict misses", verdicts.getMisses());
+            context.putUserData(REF_ENTRY_POINT_VERDICTS_KEY, null);
         }
+        RunStatistics.release(context);
+        RefElementIndex.release(context);
     }
 
     private static EntryPointsManager getEntryPointsManager(final GlobalInspectionContext context) {
         return context.getExtension(GlobalJavaInspectionContext.CONTEXT).getEntryPointsManager(context.getRefManager());
     }
 
-    private static class CodeScanner extends RefJavaVisitor {
+    /**
+     * 从入口开始标记可达的元素
+     * <p>
+     * 原版是 accept 递归调用，调用链很长时会栈溢出，这里改成了显式的栈：visitXxx 只把下一步要访问的元素压栈，
+     * 由 {@link #drain()} 循环弹出访问，不动点和原来一样
+     */
+    private static class CodeScanner extends RefJavaVisitor implements ReachabilityEngine {
+        private final RefGraphSnapshot mySnapshot;
         private final Map<RefClass, Set<RefMethod>> myClassIDtoMethods = new HashMap<>();
         private final Set<RefClass> myInstantiatedClasses = new HashSet<>();
-        private int myInstantiatedClassesCount;
+
+        /**
+         * 上一轮 processDelayedMethods 之后新实例化的类，只有它们的延迟方法需要放出来
+         */
+        private final ArrayDeque<RefClass> myNewlyInstantiatedClasses = new ArrayDeque<>();
         private final Set<RefMethod> myProcessedMethods = new HashSet<>();
 
+        /**
+         * 等待访问的元素
+         */
+        private final ArrayDeque<RefElement> myPending = new ArrayDeque<>();
+
+        private CodeScanner(@NotNull RefGraphSnapshot snapshot) {
+            mySnapshot = snapshot;
+        }
+
         @Override
         public void visitMethod(@NotNull RefMethod method) {
 
@@ -769,7 +1174,7 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
                     }
 
                     for (RefMethod refSub : method.getDerivedMethods()) {
-                        visitMethod(refSub);
+                        myPending.push(refSub);
                     }
                 }
             }
@@ -803,33 +1208,61 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
             }
         }
 
-        private void addInstantiatedClass(@NotNull RefClass refClass) {
-            if (myInstantiatedClasses.add(refClass)) {
-                ((RefClassImpl) refClass).setReachable(true);
-                myInstantiatedClassesCount++;
+        @Override
+        public void scan(RefElement @NotNull [] entryPoints) {
+            visitAll(entryPoints);
 
-                final List<RefMethod> refMethods = refClass.getLibraryMethods();
-                for (RefMethod refMethod : refMethods) {
-                    refMethod.accept(this);
-                }
-                for (RefClass baseClass : refClass.getBaseClasses()) {
-                    addInstantiatedClass(baseClass);
+            while (hasNewlyInstantiatedClasses()) {
+                processDelayedMethods();
+            }
+        }
+
+        /**
+         * 访问 elements 以及从它们出发能到达的所有元素
+         */
+        private void visitAll(RefElement @NotNull [] elements) {
+            for (RefElement element : elements) {
+                myPending.push(element);
+            }
+            drain();
+        }
+
+        private void drain() {
+            while (!myPending.isEmpty()) {
+                myPending.pop().accept(this);
+            }
+        }
+
+        private void addInstantiatedClass(@NotNull RefClass refClass) {
+            // 父类也要实例化，用栈代替递归
+            ArrayDeque<RefClass> classes = new ArrayDeque<>();
+            classes.push(refClass);
+
+            while (!classes.isEmpty()) {
+                RefClass instantiated = classes.pop();
+                if (myInstantiatedClasses.add(instantiated)) {
+                    ((RefClassImpl) instantiated).setReachable(true);
+                    myNewlyInstantiatedClasses.add(instantiated);
+
+                    final List<RefMethod> refMethods = instantiated.getLibraryMethods();
+                    for (RefMethod refMethod : refMethods) {
+                        myPending.push(refMethod);
+                    }
+                    for (RefClass baseClass : instantiated.getBaseClasses()) {
+                        classes.push(baseClass);
+                    }
                 }
             }
         }
 
         private void makeContentReachable(RefJavaElementImpl refElement) {
             refElement.setReachable(true);
-            for (RefElement refCallee : refElement.getOutReferences()) {
-                refCallee.accept(this);
-            }
+            mySnapshot.forEachOutReference(refElement, myPending::push);
         }
 
         private void makeClassInitializersReachable(@Nullable RefClass refClass) {
             if (refClass != null) {
-                for (RefElement refCallee : refClass.getOutReferences()) {
-                    refCallee.accept(this);
-                }
+                mySnapshot.forEachOutReference(refClass, myPending::push);
             }
         }
 
@@ -842,31 +1275,32 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
             methods.add(refMethod);
         }
 
-        private boolean isClassInstantiated(RefClass refClass) {
-            return refClass == null || refClass.isUtilityClass() || myInstantiatedClasses.contains(refClass);
+        @Override
+        public boolean isInstantiated(@NotNull RefClass refClass) {
+            return myInstantiatedClasses.contains(refClass);
         }
 
-        private int newlyInstantiatedClassesCount() {
-            return myInstantiatedClassesCount;
+        private boolean isClassInstantiated(RefClass refClass) {
+            return refClass == null || refClass.isUtilityClass() || myInstantiatedClasses.contains(refClass);
         }
 
-        private void cleanInstantiatedClassesCount() {
-            myInstantiatedClassesCount = 0;
+        private boolean hasNewlyInstantiatedClasses() {
+            return !myNewlyInstantiatedClasses.isEmpty();
         }
 
+        /**
+         * 只处理新实例化的类的延迟方法，不再每一轮把所有实例化的类重新扫一遍
+         * <p>
+         * 类实例化之后不会再有方法延迟到它身上，放出来之后就可以从 map 里删掉
+         */
         private void processDelayedMethods() {
-            RefClass[] instClasses = myInstantiatedClasses.toArray(new RefClass[0]);
-            for (RefClass refClass : instClasses) {
-                if (isClassInstantiated(refClass)) {
-                    Set<RefMethod> methods = myClassIDtoMethods.get(refClass);
-                    if (methods != null) {
-                        RefMethod[] arMethods = methods.toArray(new RefMethod[0]);
-                        for (RefMethod arMethod : arMethods) {
-                            arMethod.accept(this);
-                        }
-                    }
+            while (!myNewlyInstantiatedClasses.isEmpty()) {
+                Set<RefMethod> methods = myClassIDtoMethods.remove(myNewlyInstantiatedClasses.poll());
+                if (methods != null) {
+                    myPending.addAll(methods);
                 }
             }
+            drain();
         }
     }
 
@@ -878,14 +1312,15 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
         return AnalysisBundle.message("inspection.dead.code.display.name");
     }
 
+    private final static RecursionReachable RECURSION_REACHABLE = new RecursionChain();
+
     /**
-     * 递归过程中已经处理的 RefClass
+     * 调试用，打在 debug 级别的日志里，不写 System.out
      */
-    private final static Set<RefClass> PROCESSED_REFCLASS = new HashSet<>();
-
-    private final static RecursionReachable RECURSION_REACHABLE = new RecursionField();
-
     public static void printName(String format, RefJavaElement refJavaElement) {
+        if (!LOG.isDebugEnabled()) {
+            return;
+        }
 
         String name = null;
 
@@ -904,6 +1339,6 @@ public class UnusedDeclarationInspectionBase extends GlobalInspectionTool {
             name = " empty";
         }
 
-        System.out.println(String.format(format, name));
+        LOG.debug(String.format(format, name));
     }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 // Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.github.hwhaocool.codeInspection.fromsdk;
 
+import com.github.hwhaocool.codeInspection.deadcode.CandidateIndex;
+import com.github.hwhaocool.codeInspection.deadcode.RefGraphSnapshot;
 import com.intellij.analysis.AnalysisBundle;
 import com.intellij.codeHighlighting.HighlightDisplayLevel;
 import com.intellij.codeInsight.daemon.impl.HighlightInfoType;
@@ -92,9 +94,14 @@ import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseEvent;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -112,6 +119,26 @@ public class UnusedDeclarationPresentation extends DefaultInspectionToolPresenta
             ConcurrentCollectionFactory.createMap(ContainerUtil.identityStrategy());
     private final Set<RefEntity> myExcludedElements = ConcurrentCollectionFactory.createConcurrentSet(ContainerUtil.identityStrategy());
 
+    /**
+     * 下一次 updateContent 需要重新判断的元素
+     */
+    private final Set<RefEntity> myDirtyElements = ConcurrentCollectionFactory.createConcurrentSet(ContainerUtil.identityStrategy());
+
+    /**
+     * 可达性可能变少了（删掉了可达的元素、入口），只能全部重算
+     */
+    private volatile boolean myFullRefreshRequired = true;
+
+    /**
+     * 新增了入口，可达性只会变多，只需要增量计算，然后重新判断当前显示的元素
+     */
+    private volatile boolean myRecheckContents;
+
+    /**
+     * 上一次 updateContent 时的 FILTER_RESOLVED_ITEMS，变了的话需要全部重算
+     */
+    private boolean myFilterResolvedItems;
+
     private final WeakUnreferencedFilter myFilter;
     private DeadHTMLComposer myComposer;
     private final AtomicNotNullLazyValue<InspectionToolWrapper> myDummyWrapper = new AtomicNotNullLazyValue<InspectionToolWrapper>() {
@@ -178,16 +205,10 @@ public class UnusedDeclarationPresentation extends DefaultInspectionToolPresenta
                 return 1;
             }
 
-            for (RefElement element : refElement.getInReferences()) {
-                if (refElement instanceof RefFile) {
-                    return 1;
-                }
-                if (((UnusedDeclarationInspectionBase) myTool).isEntryPoint(element)) {
-                    return 1;
-                }
-            }
+            boolean referencedByEntryPoint = RefGraphSnapshot.getInstance(myContext).anyInReference(refElement,
+                    element -> refElement instanceof RefFile || ((UnusedDeclarationInspectionBase) myTool).isEntryPoint(element));
 
-            return 0;
+            return referencedByEntryPoint ? 1 : 0;
         }
     }
 
@@ -215,11 +236,13 @@ public class UnusedDeclarationPresentation extends DefaultInspectionToolPresenta
     @Override
     public void amnesty(@NotNull RefEntity element) {
         myExcludedElements.remove(element);
+        myDirtyElements.add(element);
     }
 
     @Override
     public void exclude(@NotNull RefEntity element) {
         myExcludedElements.add(element);
+        myDirtyElements.add(element);
     }
 
     @Override
@@ -329,7 +352,9 @@ public class UnusedDeclarationPresentation extends DefaultInspectionToolPresenta
                         .toArray(PsiElement[]::new);
                 SafeDeleteHandler.invoke(project, elements, false,
                         () -> {
+                            markAffectedByRemoval(filteredRefElements);
                             removeElements(filteredRefElements, project, myToolWrapper);
+                            RefGraphSnapshot.invalidate(getContext());
                             for (RefEntity ref : filteredRefElements) {
                                 myFixedElements.put(ref, UnusedDeclarationHint.DELETE);
                             }
@@ -372,6 +397,7 @@ public class UnusedDeclarationPresentation extends DefaultInspectionToolPresenta
                 }
             }
 
+            entryPointsChanged(Arrays.asList(refElements), false);
             return true;
         }
     }
@@ -387,6 +413,8 @@ public class UnusedDeclarationPresentation extends DefaultInspectionToolPresenta
             if (!super.applyFix(refElements)) {
                 return false;
             }
+            markAffectedByRemoval(refElements);
+
             List<RefElement> deletedRefs = new ArrayList<>(1);
             final RefFilter filter = getFilter();
             for (RefEntity refElement : refElements) {
@@ -406,10 +434,17 @@ public class UnusedDeclarationPresentation extends DefaultInspectionToolPresenta
                 refElement.getRefManager().removeRefElement((RefElement) refElement, deletedRefs);
             }
 
+            RefGraphSnapshot.invalidate(getContext());
+
             EntryPointsManager entryPointsManager = getEntryPointsManager();
+            boolean entryRemoved = false;
             for (RefElement refElement : deletedRefs) {
+                entryRemoved |= refElement.isEntry();
                 entryPointsManager.removeEntryPoint(refElement);
             }
+            if (entryRemoved) {
+                entryPointsChanged(deletedRefs, true);
+            }
 
             for (RefElement ref : deletedRefs) {
                 myFixedElements.put(ref, UnusedDeclarationHint.COMMENT);
@@ -511,33 +546,174 @@ public class UnusedDeclarationPresentation extends DefaultInspectionToolPresenta
         return myFixedElements.containsKey(entity);
     }
 
+    /**
+     * 只有第一次、删掉了可达的元素、或者 FILTER_RESOLVED_ITEMS 变了的时候才全部重算
+     * <p>
+     * exclude / amnesty 不影响可达性，只需要重新判断这几个元素；
+     * 新增入口只会让元素变成可达，只需要增量计算可达性，然后重新判断当前显示的元素；
+     * 删掉不可达的元素不会影响其他元素的可达性，只需要重新判断它们自己和它们引用的元素
+     */
     @Override
     public synchronized void updateContent() {
+        final boolean filterResolvedItems = getContext().getUIOptions().FILTER_RESOLVED_ITEMS;
+        if (myFullRefreshRequired || filterResolvedItems != myFilterResolvedItems) {
+            myFullRefreshRequired = false;
+            myRecheckContents = false;
+            myDirtyElements.clear();
+            myFilterResolvedItems = filterResolvedItems;
+
+            fullRefresh();
+        } else {
+            if (myRecheckContents) {
+                myRecheckContents = false;
+                getTool().checkForReachableRefsIncrementally(getContext());
+                synchronized (myContents) {
+                    for (Set<RefEntity> entities : myContents.values()) {
+                        myDirtyElements.addAll(entities);
+                    }
+                }
+            }
+
+            refreshDirtyElements();
+        }
+        updateProblemElements();
+    }
+
+    private void fullRefresh() {
         getTool().checkForReachableRefs(getContext());
         myContents.clear();
         final UnusedSymbolLocalInspectionBase localInspectionTool = getTool().getSharedLocalInspectionTool();
+
+        if (getFilter() instanceof RefUnreachableFilter) {
+            // 过滤器只接受还可疑的、要检查的类、方法、字段，候选索引里就是这些
+            CandidateIndex.getInstance(getContext(), getTool()).peekSuspicious(refElement -> {
+                if (isContentEntry(refElement, localInspectionTool)) {
+                    registerContentEntry(refElement, RefJavaUtil.getInstance().getPackageName(refElement));
+                }
+            });
+            return;
+        }
+
+        // 入口列表之类的过滤器要的不是可疑元素，还是遍历所有元素
         getContext().getRefManager().iterate(new RefJavaVisitor() {
             @Override
             public void visitElement(@NotNull RefEntity refEntity) {
-                if (!(refEntity instanceof RefJavaElement)) {
-                    return;//dead code doesn't work with refModule | refPackage
+                if (isContentEntry(refEntity, localInspectionTool)) {
+                    registerContentEntry(refEntity, RefJavaUtil.getInstance().getPackageName(refEntity));
                 }
-                RefJavaElement refElement = (RefJavaElement) refEntity;
-                if (!compareVisibilities(refElement, localInspectionTool)) {
+            }
+        });
+    }
+
+    private void refreshDirtyElements() {
+        if (myDirtyElements.isEmpty()) {
+            return;
+        }
+
+        final UnusedSymbolLocalInspectionBase localInspectionTool = getTool().getSharedLocalInspectionTool();
+        for (Iterator<RefEntity> iterator = myDirtyElements.iterator(); iterator.hasNext(); ) {
+            RefEntity refEntity = iterator.next();
+            iterator.remove();
+
+            unregisterContentEntry(refEntity);
+            if (isContentEntry(refEntity, localInspectionTool)) {
+                registerContentEntry(refEntity, RefJavaUtil.getInstance().getPackageName(refEntity));
+            }
+        }
+    }
+
+    private boolean isContentEntry(@NotNull RefEntity refEntity, UnusedSymbolLocalInspectionBase localInspectionTool) {
+        if (!(refEntity instanceof RefJavaElement)) {
+            return false;//dead code doesn't work with refModule | refPackage
+        }
+        RefJavaElement refElement = (RefJavaElement) refEntity;
+        if (!compareVisibilities(refElement, localInspectionTool)) {
+            return false;
+        }
+        if (getContext().getUIOptions().FILTER_RESOLVED_ITEMS &&
+                (myFixedElements.containsKey(refElement) ||
+                        isExcluded(refEntity) ||
+                        isSuppressed(refElement))) {
+            return false;
+        }
+        return refElement.isValid() && getFilter().accepts(refElement) && !skipEntryPoints(refElement);
+    }
+
+    private void unregisterContentEntry(@NotNull RefEntity refEntity) {
+        Set<RefEntity> entities = myContents.get(RefJavaUtil.getInstance().getPackageName(refEntity));
+        if (entities != null && entities.remove(refEntity)) {
+            return;
+        }
+
+        // 删掉的元素不一定还能算出原来的包名
+        synchronized (myContents) {
+            for (Set<RefEntity> packageEntities : myContents.values()) {
+                if (packageEntities.remove(refEntity)) {
                     return;
                 }
-                if (!(getContext().getUIOptions().FILTER_RESOLVED_ITEMS &&
-                        (myFixedElements.containsKey(refElement) ||
-                                isExcluded(refEntity) ||
-                                isSuppressed(refElement))) && refElement.isValid() && getFilter().accepts(refElement)) {
-                    if (skipEntryPoints(refElement)) {
-                        return;
-                    }
-                    registerContentEntry(refEntity, RefJavaUtil.getInstance().getPackageName(refEntity));
+            }
+        }
+    }
+
+    /**
+     * 在删除之前调用，记下删除会影响到的元素
+     * <p>
+     * 被删的（不可达的）元素不会让其他元素变得可达，只有它们引用的元素的 inReferences 会变少；
+     * 如果被删的元素是可达的或者是入口，它引用的元素可能变得不可达，只能全部重算
+     * @param refElements 要删除的元素
+     * @author YellowTail
+     * @since 2020-12-23
+     */
+    private void markAffectedByRemoval(RefEntity @NotNull [] refElements) {
+        Deque<RefEntity> pending = new ArrayDeque<>(Arrays.asList(refElements));
+        while (!pending.isEmpty()) {
+            RefEntity refEntity = pending.pop();
+            myDirtyElements.add(refEntity);
+
+            if (refEntity instanceof RefElement) {
+                RefElement refElement = (RefElement) refEntity;
+                if (refElement.isReachable() || refElement.isEntry()) {
+                    myFullRefreshRequired = true;
+                    return;
                 }
+                myDirtyElements.addAll(refElement.getOutReferences());
             }
-        });
-        updateProblemElements();
+            pending.addAll(refEntity.getChildren());
+        }
+    }
+
+    /**
+     * 入口变了（加入或者移除），这个检查的结果和入口列表都要更新
+     * @param changed 加入或者移除的入口
+     * @param removed 移除了入口，可达性可能变少，{@link com.github.hwhaocool.codeInspection.deadcode.IncrementalReachability} 处理不了，只能全部重算
+     * @author YellowTail
+     * @since 2020-12-30
+     */
+    protected void entryPointsChanged(@NotNull Collection<? extends RefEntity> changed, boolean removed) {
+        for (UnusedDeclarationPresentation presentation : getLinkedPresentations()) {
+            // EntryPointsManager 里的入口变了，之前缓存的入口判断结果作废
+            presentation.getTool().entryPointSettingsChanged();
+            if (removed) {
+                presentation.myFullRefreshRequired = true;
+            } else {
+                presentation.myRecheckContents = true;
+                presentation.myDirtyElements.addAll(changed);
+            }
+        }
+    }
+
+    /**
+     * @return 入口变了之后要更新的 presentation：这个检查自己的和它的入口列表
+     */
+    @NotNull
+    protected Collection<UnusedDeclarationPresentation> getLinkedPresentations() {
+        Set<UnusedDeclarationPresentation> presentations = new LinkedHashSet<>();
+        presentations.add(this);
+        InspectionToolPresentation entryPoints = myContext.getPresentation(myDummyWrapper.getValue());
+        if (entryPoints instanceof UnusedDeclarationPresentation) {
+            presentations.add((UnusedDeclarationPresentation) entryPoints);
+        }
+        return presentations;
     }
 
     protected boolean skipEntryPoints(RefJavaElement refElement) {
@@ -632,6 +808,9 @@ public class UnusedDeclarationPresentation extends DefaultInspectionToolPresenta
     public void cleanup() {
         super.cleanup();
         myFixedElements.clear();
+        myDirtyElements.clear();
+        myFullRefreshRequired = true;
+        UnusedDeclarationInspectionBase.releaseRunData(getContext());
     }
 
     @Override
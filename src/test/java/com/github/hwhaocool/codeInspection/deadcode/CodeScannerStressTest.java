@@ -0,0 +1,58 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.reference.RefElement;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 可达性遍历用的是显式的栈，不是递归：合成一个 100 万条调用边的图，深度优先走下来有一万层，不能 StackOverflowError
+ * <p>
+ * 每个类 100 个静态方法，每个方法调用本类所有的方法（100 x 100 x 100 = 100 万条边），
+ * 每个类的最后一个方法再调用下一个类的第一个方法，串成一条链
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class CodeScannerStressTest extends YellowVoInspectionTestCase {
+
+    private static final int CLASSES = 100;
+
+    private static final int METHODS = 100;
+
+    public void testMillionEdgeChain() {
+        for (int c = 0; c < CLASSES; c++) {
+            myFixture.addClass(generateClass(c));
+        }
+        myFixture.addClass("public class Main { public static void main(String[] args) { C0.m0(); } }");
+
+        GlobalInspectionContextForTests context = runInspection(new YellowVoInspection());
+        try {
+            for (int c = 0; c < CLASSES; c++) {
+                for (int m = 0; m < METHODS; m++) {
+                    RefElement refMethod = findReference(context, findMethod("C" + c, "m" + m));
+                    assertNotNull("C" + c + ".m" + m, refMethod);
+                    assertTrue("C" + c + ".m" + m, refMethod.isReachable());
+                }
+            }
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    @NotNull
+    private static String generateClass(int c) {
+        StringBuilder text = new StringBuilder("public class C").append(c).append(" {\n");
+        for (int m = 0; m < METHODS; m++) {
+            text.append("    public static void m").append(m).append("() {");
+            for (int callee = 0; callee < METHODS; callee++) {
+                text.append(" m").append(callee).append("();");
+            }
+            if (m == METHODS - 1 && c + 1 < CLASSES) {
+                text.append(" C").append(c + 1).append(".m0();");
+            }
+            text.append(" }\n");
+        }
+        return text.append("}\n").toString();
+    }
+}
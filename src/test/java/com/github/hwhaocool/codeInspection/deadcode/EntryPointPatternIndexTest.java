@@ -0,0 +1,105 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.ex.EntryPointsManager;
+import com.intellij.codeInspection.ex.EntryPointsManagerBase;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * EntryPointsManager 里配置的注解（包括 com.example.ws.* 这种通配）、类 pattern，从 {@link EntryPointPatternIndex} 里查出来是入口，
+ * 并且不用退回逐个判断
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class EntryPointPatternIndexTest extends YellowVoInspectionTestCase {
+
+    private static final String KEEP = "com.example.Keep";
+
+    private static final String WS_ANNOTATIONS = "com.example.ws.*";
+
+    private EntryPointsManagerBase.ClassPattern myEndpointPattern;
+    private EntryPointsManagerBase.ClassPattern myExactPattern;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        EntryPointsManagerBase manager = getManager();
+        manager.ADDITIONAL_ANNOTATIONS.add(KEEP);
+        manager.ADDITIONAL_ANNOTATIONS.add(WS_ANNOTATIONS);
+
+        myEndpointPattern = new EntryPointsManagerBase.ClassPattern();
+        myEndpointPattern.pattern = "com.example.api.*Endpoint";
+        myExactPattern = new EntryPointsManagerBase.ClassPattern();
+        myExactPattern.pattern = "com.example.api.Exact";
+        manager.getPatterns().add(myEndpointPattern);
+        manager.getPatterns().add(myExactPattern);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            EntryPointsManagerBase manager = getManager();
+            manager.ADDITIONAL_ANNOTATIONS.remove(KEEP);
+            manager.ADDITIONAL_ANNOTATIONS.remove(WS_ANNOTATIONS);
+            manager.getPatterns().remove(myEndpointPattern);
+            manager.getPatterns().remove(myExactPattern);
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testConfiguredAnnotationsAndClassPatterns() {
+        myFixture.addClass("package com.example; public @interface Keep {}");
+        myFixture.addClass("package com.example.ws; public @interface Get {}");
+        myFixture.addClass("package com.example.ws.nested; public @interface Post {}");
+        myFixture.addClass("package com.example; @Keep public class Kept {}");
+        myFixture.addClass("package com.example; public class NotKept {}");
+        myFixture.addClass("package com.example; public class Resource {" +
+                " @com.example.ws.Get public static void get() {}" +
+                " @com.example.ws.nested.Post public static void post() {}" +
+                " public static void other() {} }");
+        myFixture.addClass("package com.example.api; public class UserEndpoint {}");
+        myFixture.addClass("package com.example.api; public class Exact {}");
+        myFixture.addClass("package com.example.api; public class UserHelper {}");
+
+        GlobalInspectionContextForTests context = runInspection(new YellowVoInspection());
+        try {
+            EntryPointPatternIndex index = EntryPointPatternIndex.getInstance(context);
+            assertNotNull(index);
+            assertFalse(index.needsFallback());
+
+            assertEntryPoint(context, index, myFixture.findClass("com.example.Kept"), true);
+            assertEntryPoint(context, index, myFixture.findClass("com.example.NotKept"), false);
+            assertEntryPoint(context, index, findMethod("com.example.Resource", "get"), true);
+            assertEntryPoint(context, index, findMethod("com.example.Resource", "post"), true);
+            assertEntryPoint(context, index, findMethod("com.example.Resource", "other"), false);
+            assertEntryPoint(context, index, myFixture.findClass("com.example.api.UserEndpoint"), true);
+            assertEntryPoint(context, index, myFixture.findClass("com.example.api.Exact"), true);
+            assertEntryPoint(context, index, myFixture.findClass("com.example.api.UserHelper"), false);
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    /**
+     * 索引的结果和平台逐个判断的结果一样，并且检查结果里可达性也对
+     */
+    private void assertEntryPoint(@NotNull GlobalInspectionContextForTests context, @NotNull EntryPointPatternIndex index,
+                                  @NotNull PsiElement element, boolean expected) {
+        assertEquals(element.toString(), expected, index.isEntryPoint(element));
+        assertEquals(element.toString(), expected, getManager().isEntryPoint(element));
+
+        RefElement refElement = findReference(context, element);
+        assertNotNull(element.toString(), refElement);
+        assertEquals(element.toString(), expected, refElement.isReachable());
+    }
+
+    @NotNull
+    private EntryPointsManagerBase getManager() {
+        return (EntryPointsManagerBase) EntryPointsManager.getInstance(getProject());
+    }
+}
@@ -0,0 +1,58 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefMethod;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+/**
+ * 几个实现类共用一个最顶层的父方法时，{@link MethodHierarchyIndex} 让这个父方法只排队搜索一次；
+ * 同时实现两个接口的方法两个 root 都要搜，但已经搜过的不再搜
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class MethodHierarchyIndexTest extends YellowVoInspectionTestCase {
+
+    public void testSharedRootMethodIsSearchedOnce() {
+        myFixture.addClass("public interface Api { void call(); }");
+        myFixture.addClass("public interface Other { void call(); }");
+        myFixture.addClass("public class First implements Api { public void call() {} }");
+        myFixture.addClass("public class Second implements Api { public void call() {} }");
+        myFixture.addClass("public class Third extends Second { public void call() {} }");
+        myFixture.addClass("public class Both implements Api, Other { public void call() {} }");
+        // 外部范围（非 Java 文件）里要出现方法名，不然词索引预过滤直接跳过搜索
+        myFixture.addFileToProject("calls.xml", "<calls><call/></calls>");
+
+        GlobalInspectionContextForTests context = runInspection(new YellowVoInspection());
+        try {
+            MethodHierarchyIndex hierarchy = MethodHierarchyIndex.getInstance(context);
+            RefMethod apiCall = findRefMethod(context, "Api");
+            RefMethod otherCall = findRefMethod(context, "Other");
+
+            assertEquals(Collections.singletonList(apiCall), hierarchy.getRootMethods(findRefMethod(context, "First")));
+            assertEquals(Collections.singletonList(apiCall), hierarchy.getRootMethods(findRefMethod(context, "Second")));
+            assertEquals(Collections.singletonList(apiCall), hierarchy.getRootMethods(findRefMethod(context, "Third")));
+            assertEquals(new HashSet<>(Arrays.asList(apiCall, otherCall)), new HashSet<>(hierarchy.getRootMethods(findRefMethod(context, "Both"))));
+
+            // 两个 root 都已经排过队了
+            assertFalse(hierarchy.markEnqueued(apiCall));
+            assertFalse(hierarchy.markEnqueued(otherCall));
+            assertEquals(2, RunStatistics.getInstance(context).get("method usage searches enqueued"));
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    @NotNull
+    private RefMethod findRefMethod(@NotNull GlobalInspectionContextForTests context, @NotNull String className) {
+        RefElement refMethod = findReference(context, findMethod(className, "call"));
+        assertTrue(className, refMethod instanceof RefMethod);
+        return (RefMethod) refMethod;
+    }
+}
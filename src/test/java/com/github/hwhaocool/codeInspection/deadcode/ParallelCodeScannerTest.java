@@ -0,0 +1,114 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@link ParallelCodeScanner} 和串行的 CodeScanner 算出来的可达性要一模一样
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class ParallelCodeScannerTest extends YellowVoInspectionTestCase {
+
+    /**
+     * 随机图的类数量，每个类的方法、字段数量
+     */
+    private static final int RANDOM_CLASSES = 60;
+    private static final int RANDOM_MEMBERS = 8;
+
+    public void testSameAsSequentialOnHierarchies() {
+        myFixture.addClass("public interface Shape { double area(); }");
+        myFixture.addClass("public abstract class BaseShape implements Shape { protected String name; public String getName() { return name; } abstract void draw(); }");
+        myFixture.addClass("public class Circle extends BaseShape { double r; public double area() { return r * r; } void draw() { helper(); } private void helper() {} }");
+        myFixture.addClass("public class Square extends BaseShape { double a; public double area() { return a * a; } void draw() {} }");
+        myFixture.addClass("public class NeverCreated extends BaseShape { public double area() { return 0; } void draw() { Util.log(); } }");
+        myFixture.addClass("public class Util { static int counter = init(); static int init() { return 1; } static void log() {} static void unused() {} }");
+        myFixture.addClass("public class Unused { void foo() { new Circle(); } }");
+        myFixture.addClass("public class Main { public static void main(String[] args) { Shape s = new Circle(); s.area(); ((BaseShape) s).draw(); System.out.println(Util.counter); } }");
+
+        assertSameReachability();
+    }
+
+    public void testSameAsSequentialOnRandomGraph() {
+        Random random = new Random(20201230L);
+        for (int c = 0; c < RANDOM_CLASSES; c++) {
+            myFixture.addClass(generateClass(c, random));
+        }
+        myFixture.addClass("public class Main { public static void main(String[] args) { R0.s0(); new R1().i0(); } }");
+
+        assertSameReachability();
+    }
+
+    private void assertSameReachability() {
+        Map<String, Boolean> sequential = computeReachability(false);
+        Map<String, Boolean> parallel = computeReachability(true);
+        assertEquals(sequential, parallel);
+        assertTrue(sequential.containsValue(true));
+    }
+
+    @NotNull
+    private Map<String, Boolean> computeReachability(boolean parallel) {
+        YellowVoInspection tool = new YellowVoInspection();
+        tool.PARALLEL_REACHABILITY = parallel;
+        GlobalInspectionContextForTests context = runInspection(tool);
+        try {
+            return collectReachability(context);
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    /**
+     * 静态方法、实例方法、字段随机互相引用，有的类有父类，有的类从来不 new
+     */
+    @NotNull
+    private static String generateClass(int c, @NotNull Random random) {
+        StringBuilder text = new StringBuilder("public class R").append(c);
+        if (c > 1 && random.nextInt(3) == 0) {
+            text.append(" extends R").append(random.nextInt(c));
+        }
+        text.append(" {\n");
+
+        for (int m = 0; m < RANDOM_MEMBERS; m++) {
+            text.append("    public int f").append(c).append('_').append(m)
+                    .append(random.nextBoolean() ? " = R" + random.nextInt(RANDOM_CLASSES) + ".s" + random.nextInt(RANDOM_MEMBERS) + "()" : "")
+                    .append(";\n");
+            text.append("    public static int s").append(m).append("() {").append(randomCalls(random, true)).append(" return 0; }\n");
+            text.append("    public int i").append(m).append("() {").append(randomCalls(random, false)).append(" return 0; }\n");
+        }
+        return text.append("}\n").toString();
+    }
+
+    /**
+     * @param isStatic 在静态方法里，不能直接调用实例方法
+     */
+    @NotNull
+    private static String randomCalls(@NotNull Random random, boolean isStatic) {
+        StringBuilder calls = new StringBuilder();
+        int count = random.nextInt(4);
+        for (int i = 0; i < count; i++) {
+            int target = random.nextInt(RANDOM_CLASSES);
+            int member = random.nextInt(RANDOM_MEMBERS);
+            switch (random.nextInt(4)) {
+                case 0:
+                    calls.append(" R").append(target).append(".s").append(member).append("();");
+                    break;
+                case 1:
+                    calls.append(" new R").append(target).append("().i").append(member).append("();");
+                    break;
+                case 2:
+                    calls.append(isStatic ? " s" : " i").append(member).append("();");
+                    break;
+                default:
+                    calls.append(" int v").append(i).append(" = new R").append(target).append("().f").append(target).append('_').append(member).append(';');
+                    break;
+            }
+        }
+        return calls.toString();
+    }
+}
@@ -0,0 +1,75 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.reference.RefElement;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+/**
+ * 只在 XML 里按全限定名写出来的类，{@link QualifiedNameScanner} 批量扫描之后算被使用了，和逐个搜索的结果一样
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class QualifiedNameScannerTest extends YellowVoInspectionTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        myFixture.addClass("package com.example; public class XmlBean {}");
+        myFixture.addClass("package com.example; public class Outer { public static class Inner {} }");
+        myFixture.addClass("package com.example; public class NotMentioned {}");
+        myFixture.addClass("package com.example; public class XmlBeanFactory {}");
+        myFixture.addFileToProject("beans.xml",
+                "<beans>\n" +
+                "    <bean id=\"bean\" class=\"com.example.XmlBean\"/>\n" +
+                "    <bean id=\"inner\" class=\"com.example.Outer$Inner\"/>\n" +
+                "    <bean id=\"prefix\" class=\"com.example.XmlBeanFactoryImpl\"/>\n" +
+                "</beans>\n");
+    }
+
+    public void testQualifiedNameInXmlMarksClassUsed() {
+        GlobalInspectionContextForTests context = runInspection(createTool(true));
+        try {
+            assertReachable(context, "com.example.XmlBean", true);
+            assertReachable(context, "com.example.Outer.Inner", true);
+            assertReachable(context, "com.example.NotMentioned", false);
+            // 前后是标识符字符的不算出现
+            assertReachable(context, "com.example.XmlBeanFactory", false);
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    public void testSameAsPerClassSearch() {
+        assertEquals(Boolean.TRUE, computeReachability(false).get("com.example.XmlBean"));
+        assertEquals(Boolean.TRUE, computeReachability(true).get("com.example.XmlBean"));
+    }
+
+    @NotNull
+    private static YellowVoInspection createTool(boolean batch) {
+        YellowVoInspection tool = new YellowVoInspection();
+        tool.ADD_NONJAVA_TO_ENTRIES = true;
+        tool.BATCH_EXTERNAL_USAGES = batch;
+        return tool;
+    }
+
+    @NotNull
+    private Map<String, Boolean> computeReachability(boolean batch) {
+        GlobalInspectionContextForTests context = runInspection(createTool(batch));
+        try {
+            return collectReachability(context);
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    private void assertReachable(@NotNull GlobalInspectionContextForTests context, @NotNull String className, boolean expected) {
+        RefElement refClass = findReference(context, myFixture.findClass(className));
+        assertNotNull(className, refClass);
+        assertEquals(className, expected, refClass.isReachable());
+    }
+}
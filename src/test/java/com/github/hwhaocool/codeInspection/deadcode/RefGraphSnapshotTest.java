@@ -0,0 +1,131 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * {@link RefGraphSnapshot} 的出边和 RefElement.getOutReferences() 一模一样；
+ * 顺便把两种方式从头到尾遍历一遍的耗时和快照占用的内存打到日志里
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class RefGraphSnapshotTest extends YellowVoInspectionTestCase {
+    private static final Logger LOG = Logger.getInstance(RefGraphSnapshotTest.class);
+
+    private static final int CLASSES = 40;
+
+    private static final int METHODS = 40;
+
+    /**
+     * 遍历的轮数，取最后一轮的耗时，前面的算预热
+     */
+    private static final int ROUNDS = 5;
+
+    public void testSnapshotMatchesRefElementTraversal() {
+        for (int c = 0; c < CLASSES; c++) {
+            myFixture.addClass(generateClass(c));
+        }
+        myFixture.addClass("public class Main { public static void main(String[] args) { new C0().i0(); } }");
+
+        GlobalInspectionContextForTests context = runInspection(new YellowVoInspection());
+        try {
+            RefGraphSnapshot snapshot = RefGraphSnapshot.getInstance(context);
+            RefElementIndex index = snapshot.getIndex();
+            assertTrue(index.size() > CLASSES * METHODS);
+
+            int edges = 0;
+            for (int id = 0; id < index.size(); id++) {
+                RefElement element = index.elementAt(id);
+                List<RefElement> fromSnapshot = new ArrayList<>();
+                snapshot.forEachOutReference(element, fromSnapshot::add);
+                assertEquals(element.getExternalName(), new HashSet<>(element.getOutReferences()), new HashSet<>(fromSnapshot));
+                assertEquals(element.getExternalName(), element.getOutReferences().size(), fromSnapshot.size());
+                edges += fromSnapshot.size();
+            }
+            assertTrue(edges > CLASSES * METHODS * METHODS);
+
+            long footprint = snapshot.footprintBytes();
+            assertTrue(footprint > 0);
+
+            long snapshotNanos = 0;
+            long refElementNanos = 0;
+            for (int round = 0; round < ROUNDS; round++) {
+                snapshotNanos = traverse(index, snapshot::forEachOutReference);
+                refElementNanos = traverse(index, (element, consumer) -> element.getOutReferences().forEach(consumer));
+            }
+            LOG.info(String.format("ref graph traversal: %d elements, %d edges, snapshot %d KB; snapshot %d us, RefElement %d us",
+                    index.size(), edges, footprint / 1024, snapshotNanos / 1000, refElementNanos / 1000));
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    /**
+     * 从每个还没走过的元素开始深度优先走一遍整个图
+     * @return 耗时，纳秒
+     */
+    private static long traverse(@NotNull RefElementIndex index,
+                                 @NotNull BiConsumer<RefElement, Consumer<? super RefElement>> outReferences) {
+        long start = System.nanoTime();
+        BitSet visited = new BitSet(index.size());
+        Deque<RefElement> pending = new ArrayDeque<>();
+        Set<RefElement> withoutId = new HashSet<>();
+        for (int id = 0; id < index.size(); id++) {
+            if (visited.get(id)) {
+                continue;
+            }
+            visited.set(id);
+            pending.push(index.elementAt(id));
+            while (!pending.isEmpty()) {
+                outReferences.accept(pending.pop(), target -> {
+                    int targetId = index.idOf(target);
+                    if (targetId < 0) {
+                        if (withoutId.add(target)) {
+                            pending.push(target);
+                        }
+                    } else if (!visited.get(targetId)) {
+                        visited.set(targetId);
+                        pending.push(target);
+                    }
+                });
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * 实例方法互相调用，字段引用别的类的静态方法，最后一个方法调用下一个类
+     */
+    @NotNull
+    private static String generateClass(int c) {
+        int next = (c + 1) % CLASSES;
+        StringBuilder text = new StringBuilder("public class C").append(c).append(" {\n");
+        text.append("    int f = C").append(next).append(".s();\n");
+        text.append("    static int s() { return 0; }\n");
+        for (int m = 0; m < METHODS; m++) {
+            text.append("    public void i").append(m).append("() {");
+            for (int callee = 0; callee < METHODS; callee++) {
+                text.append(" i").append(callee).append("();");
+            }
+            if (m == METHODS - 1) {
+                text.append(" new C").append(next).append("().i0();");
+            }
+            text.append(" }\n");
+        }
+        return text.append("}\n").toString();
+    }
+}
@@ -0,0 +1,152 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefEntity;
+import com.intellij.psi.PsiClass;
+import com.intellij.util.ref.GCUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.URISyntaxException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 一次检查的数据只放在这次检查的上下文里：检查结束之后没有静态字段还拿着 RefEntity，
+ * 上下文 cleanup 之后前几次检查的 RefClass 都能被回收
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class RunDataReleaseTest extends YellowVoInspectionTestCase {
+
+    private static final int RUNS = 3;
+
+    public void testRefClassesAreReleasedAfterEachRun() throws Exception {
+        myFixture.addClass("public class UserVO { private String name; public String getName() { return name; } }");
+        myFixture.addClass("public class Main { public static void main(String[] args) { System.out.println(new UserVO().getName()); } }");
+        PsiClass userVO = myFixture.findClass("UserVO");
+
+        List<WeakReference<RefElement>> previousRuns = new ArrayList<>();
+        for (int run = 0; run < RUNS; run++) {
+            previousRuns.add(runOnce(userVO, run));
+        }
+
+        GCUtil.tryGcSoftlyReachableObjects();
+        for (int run = 0; run < RUNS; run++) {
+            assertNull("RefClass of run " + run + " is still reachable", previousRuns.get(run).get());
+        }
+    }
+
+    /**
+     * 在单独的方法里跑，返回之后栈上不会再有这次检查的对象
+     */
+    @NotNull
+    private WeakReference<RefElement> runOnce(@NotNull PsiClass userVO, int run) throws Exception {
+        GlobalInspectionContextForTests context = runInspection(new YellowVoInspection());
+        try {
+            RefElement refClass = findReference(context, userVO);
+            assertNotNull(refClass);
+            // 每一次都要重新标记，不能因为上一次处理过就跳过
+            assertTrue("run " + run, refClass.isReachable());
+
+            assertNoStaticRefEntities();
+            return new WeakReference<>(refClass);
+        } finally {
+            // 结果窗口关闭时 UnusedDeclarationPresentation.cleanup 做的事
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    /**
+     * 插件里所有类的静态字段都不能拿着 RefEntity（直接引用，或者放在集合、map 里）
+     */
+    private static void assertNoStaticRefEntities() throws Exception {
+        for (Class<?> pluginClass : loadPluginClasses()) {
+            Field[] fields;
+            try {
+                fields = pluginClass.getDeclaredFields();
+            } catch (LinkageError e) {
+                continue;
+            }
+            for (Field field : fields) {
+                if (!Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                Object value;
+                try {
+                    value = field.get(null);
+                } catch (LinkageError e) {
+                    // 初始化要用到测试环境里没有的东西（UI 之类）的类，不会拿着 RefEntity
+                    continue;
+                }
+                assertFalse(pluginClass.getName() + "." + field.getName() + " holds a RefEntity", holdsRefEntity(value));
+            }
+        }
+    }
+
+    private static boolean holdsRefEntity(@Nullable Object value) {
+        if (value instanceof RefEntity) {
+            return true;
+        }
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).stream().anyMatch(RefEntity.class::isInstance);
+        }
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            return map.keySet().stream().anyMatch(RefEntity.class::isInstance)
+                    || map.values().stream().anyMatch(RefEntity.class::isInstance);
+        }
+        return false;
+    }
+
+    @NotNull
+    private static List<Class<?>> loadPluginClasses() throws IOException, URISyntaxException {
+        Path location = Paths.get(YellowVoInspection.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        if (Files.isDirectory(location)) {
+            return loadClasses(location);
+        }
+        try (FileSystem jar = FileSystems.newFileSystem(location, (ClassLoader) null)) {
+            return loadClasses(jar.getPath("/"));
+        }
+    }
+
+    @NotNull
+    private static List<Class<?>> loadClasses(@NotNull Path root) throws IOException {
+        List<String> names;
+        try (Stream<Path> files = Files.walk(root)) {
+            names = files.map(file -> root.relativize(file).toString())
+                    .filter(name -> name.endsWith(".class"))
+                    .map(name -> name.substring(0, name.length() - ".class".length()).replace('/', '.').replace('\\', '.'))
+                    .filter(name -> name.startsWith("com.github.hwhaocool."))
+                    .collect(Collectors.toList());
+        }
+
+        List<Class<?>> classes = new ArrayList<>(names.size());
+        for (String name : names) {
+            try {
+                classes.add(Class.forName(name, false, YellowVoInspection.class.getClassLoader()));
+            } catch (ClassNotFoundException | LinkageError e) {
+                // 加载不了的类不会有静态数据
+            }
+        }
+        return Collections.unmodifiableList(classes);
+    }
+}
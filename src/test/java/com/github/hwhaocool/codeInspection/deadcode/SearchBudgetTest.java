@@ -0,0 +1,79 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.GlobalJavaInspectionContext;
+import com.intellij.codeInspection.ex.EntryPointsManager;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefManager;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.psi.PsiMethod;
+import com.intellij.util.TimeoutUtil;
+
+/**
+ * 超时的搜索没有结论，元素当作被使用了（宁放过，勿杀错），不会被报成死代码
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class SearchBudgetTest extends YellowVoInspectionTestCase {
+
+    private static final String CONCEDED = "elements conceded by time budget";
+
+    public void testSlowSearchTimesOut() {
+        SearchBudget budget = new SearchBudget(50, 0);
+        assertTrue(budget.isLimited());
+        assertEquals("fast", budget.compute(() -> "fast"));
+
+        Boolean result = budget.compute(() -> {
+            while (true) {
+                ProgressManager.checkCanceled();
+                TimeoutUtil.sleep(1);
+            }
+        });
+        assertNull(result);
+    }
+
+    public void testTimedOutElementIsConceded() {
+        myFixture.addClass("public class Lonely { public static void unused() {} }");
+        myFixture.addClass("public class Main { public static void main(String[] args) { } }");
+        // 名字在外部范围里出现过，要搜
+        myFixture.addFileToProject("lonely.xml", "<unused/>");
+
+        GlobalInspectionContextForTests context = runInspection(new YellowVoInspection());
+        try {
+            PsiMethod unused = findMethod("Lonely", "unused");
+            RefElement refUnused = findReference(context, unused);
+            assertNotNull(refUnused);
+            // 没有预算的时候搜完了，确实没人用
+            assertFalse(refUnused.isReachable());
+
+            // 这一轮的时间已经用完：搜索不执行，直接当作搜到了
+            SearchBudget expired = new SearchBudget(0, 1);
+            while (!expired.isExpired()) {
+                TimeoutUtil.sleep(1);
+            }
+            RunStatistics statistics = RunStatistics.getInstance(context);
+            long concededBefore = statistics.get(CONCEDED);
+
+            UsageSearchScheduler scheduler = new UsageSearchScheduler(context);
+            scheduler.add(UsageSearchScheduler.Kind.METHOD_USAGES, refUnused, unused,
+                    () -> EntryPointBuffer.getInstance(context).add(refUnused));
+            scheduler.run(() -> { }, expired);
+
+            assertEquals(1, statistics.get(CONCEDED) - concededBefore);
+            assertTrue(EntryPointBuffer.getInstance(context).contains(refUnused));
+
+            // 和检查的下一轮一样把临时入口算进可达性，元素不会被报成没用
+            RefManager refManager = context.getRefManager();
+            EntryPointsManager entryPointsManager = context.getExtension(GlobalJavaInspectionContext.CONTEXT).getEntryPointsManager(refManager);
+            EntryPointBuffer.getInstance(context).flush(entryPointsManager);
+            IncrementalReachability reachability = IncrementalReachability.getInstance(context);
+            assertNotNull(reachability);
+            reachability.scanNewEntryPoints(entryPointsManager.getEntryPoints(refManager));
+            assertTrue(refUnused.isReachable());
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+}
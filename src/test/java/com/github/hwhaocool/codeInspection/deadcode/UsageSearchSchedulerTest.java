@@ -0,0 +1,110 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.psi.PsiClass;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+/**
+ * {@link UsageSearchScheduler} 按开销排序执行搜索，结果和默认的顺序一样；
+ * 只从 static 成员可达、没有实例化的类，派生类搜索不能当作已经有结论跳过
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class UsageSearchSchedulerTest extends YellowVoInspectionTestCase {
+
+    private static final String SKIPPED = "usage searches skipped as settled";
+
+    public void testSameAsDefaultOrder() {
+        myFixture.addClass("public interface Shape { double area(); }");
+        myFixture.addClass("public abstract class BaseShape implements Shape { protected String name; public String getName() { return name; } abstract void draw(); }");
+        myFixture.addClass("public class Circle extends BaseShape { double r; public double area() { return r * r; } void draw() {} }");
+        myFixture.addClass("public class Square extends BaseShape { double a; public double area() { return a * a; } void draw() {} }");
+        myFixture.addClass("public class Util { public static void log() {} public void format() {} public static int counter; }");
+        myFixture.addClass("public class Handler { public void handle() {} public void unused() {} }");
+        myFixture.addClass("public class Data { public String value; public String getValue() { return value; } }");
+        myFixture.addClass("public class Main { public static void main(String[] args) { Shape s = new Circle(); s.area(); Util.log(); } }");
+        // 外部范围（非 Java 文件）里出现的名字，有的是全限定名，有的只是单词
+        myFixture.addFileToProject("config.xml",
+                "<config>\n" +
+                "    <handler class=\"Handler\" method=\"handle\"/>\n" +
+                "    <property name=\"value\" format=\"counter\"/>\n" +
+                "</config>\n");
+
+        Map<String, Boolean> defaultOrder = computeReachability(false);
+        Map<String, Boolean> costOrder = computeReachability(true);
+        assertEquals(defaultOrder, costOrder);
+        assertTrue(costOrder.containsValue(true));
+        assertTrue(costOrder.containsValue(false));
+    }
+
+    public void testStaticOnlyReachableClassIsNotSettled() {
+        myFixture.addClass("public class Util { public static void helper() {} public void instanceMethod() {} }");
+        myFixture.addClass("public class Created { public void instanceMethod() {} }");
+        myFixture.addClass("public class Main { public static void main(String[] args) { Util.helper(); new Created(); } }");
+
+        GlobalInspectionContextForTests context = runInspection(createTool(true));
+        try {
+            IncrementalReachability reachability = IncrementalReachability.getInstance(context);
+            assertNotNull(reachability);
+
+            PsiClass util = myFixture.findClass("Util");
+            RefClass refUtil = (RefClass) findReference(context, util);
+            assertNotNull(refUtil);
+            assertTrue(refUtil.isReachable());
+            assertFalse(reachability.isInstantiated(refUtil));
+            RefElement utilInstanceMethod = findReference(context, findMethod("Util", "instanceMethod"));
+            assertNotNull(utilInstanceMethod);
+            assertFalse(utilInstanceMethod.isReachable());
+
+            PsiClass created = myFixture.findClass("Created");
+            RefClass refCreated = (RefClass) findReference(context, created);
+            assertNotNull(refCreated);
+            assertTrue(reachability.isInstantiated(refCreated));
+
+            // 可达但是没有实例化：派生类还要搜，找到的话实例方法就可达了
+            assertEquals(0, runDerivedClassesSearch(context, refUtil, util));
+            // 已经实例化了：标成入口不会多出可达的元素，可以跳过
+            assertEquals(1, runDerivedClassesSearch(context, refCreated, created));
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    /**
+     * @return 因为已经有结论跳过的搜索数量
+     */
+    private static long runDerivedClassesSearch(@NotNull GlobalInspectionContextForTests context, @NotNull RefClass refClass,
+                                                @NotNull PsiClass psiClass) {
+        RunStatistics statistics = RunStatistics.getInstance(context);
+        long skippedBefore = statistics.get(SKIPPED);
+
+        UsageSearchScheduler scheduler = new UsageSearchScheduler(context);
+        scheduler.add(UsageSearchScheduler.Kind.DERIVED_CLASSES, refClass, psiClass, () -> { });
+        scheduler.run(() -> { }, SearchBudget.UNLIMITED);
+        return statistics.get(SKIPPED) - skippedBefore;
+    }
+
+    @NotNull
+    private Map<String, Boolean> computeReachability(boolean costOrdered) {
+        GlobalInspectionContextForTests context = runInspection(createTool(costOrdered));
+        try {
+            return collectReachability(context);
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    @NotNull
+    private static YellowVoInspection createTool(boolean costOrdered) {
+        YellowVoInspection tool = new YellowVoInspection();
+        tool.COST_ORDERED_SEARCHES = costOrdered;
+        return tool;
+    }
+}
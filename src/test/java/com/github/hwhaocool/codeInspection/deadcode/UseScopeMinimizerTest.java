@@ -0,0 +1,57 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.github.hwhaocool.codeInspection.fromsdk.UnusedDeclarationInspectionBase;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefJavaElement;
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * 整个 project 都在分析范围里的时候，外部范围只有非 Java 文件：
+ * private 的、所在包的目录里没有非 Java 文件的包内可见的元素，{@link UseScopeMinimizer} 判断不用搜，
+ * public 的、包的目录里有 XML 的包内可见的元素还要搜
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class UseScopeMinimizerTest extends YellowVoInspectionTestCase {
+
+    public void testSkipsPrivateAndPackagePrivateMembers() {
+        myFixture.addClass("package com.example.hidden; public class Hidden {" +
+                " private static void privateMethod() {}" +
+                " static void packageMethod() {}" +
+                " static int packageField;" +
+                " public static void publicMethod() {} }");
+        myFixture.addClass("package com.example.hidden; class PackageClass {}");
+        myFixture.addClass("package com.example.mapped; public class Mapped { static void packageMethod() {} }");
+        myFixture.addFileToProject("com/example/mapped/mapper.xml", "<mapper method=\"packageMethod\"/>");
+
+        GlobalInspectionContextForTests context = runInspection(new YellowVoInspection());
+        try {
+            UseScopeMinimizer minimizer = UseScopeMinimizer.getInstance(context);
+            assertOutside(context, minimizer, findMethod("com.example.hidden.Hidden", "privateMethod"), true);
+            assertOutside(context, minimizer, findMethod("com.example.hidden.Hidden", "packageMethod"), true);
+            assertOutside(context, minimizer, myFixture.findClass("com.example.hidden.Hidden").findFieldByName("packageField", false), true);
+            assertOutside(context, minimizer, myFixture.findClass("com.example.hidden.PackageClass"), true);
+            assertOutside(context, minimizer, findMethod("com.example.hidden.Hidden", "publicMethod"), false);
+            assertOutside(context, minimizer, findMethod("com.example.mapped.Mapped", "packageMethod"), false);
+
+            // 检查过程中确实有搜索因为使用范围跳过了，跳过的元素仍然没人用
+            assertTrue(RunStatistics.getInstance(context).get("usage searches skipped by use scope") > 0);
+            RefElement packageMethod = findReference(context, findMethod("com.example.hidden.Hidden", "packageMethod"));
+            assertNotNull(packageMethod);
+            assertFalse(packageMethod.isReachable());
+        } finally {
+            UnusedDeclarationInspectionBase.releaseRunData(context);
+            context.cleanup();
+        }
+    }
+
+    private static void assertOutside(@NotNull GlobalInspectionContextForTests context, @NotNull UseScopeMinimizer minimizer,
+                                      PsiElement element, boolean expected) {
+        assertNotNull(element);
+        RefElement refElement = findReference(context, element);
+        assertTrue(String.valueOf(element), refElement instanceof RefJavaElement);
+        assertEquals(String.valueOf(element), expected, minimizer.isOutsideExternalScope((RefJavaElement) refElement));
+    }
+}
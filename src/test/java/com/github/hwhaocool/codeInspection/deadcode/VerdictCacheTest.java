@@ -0,0 +1,27 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * stamp 里任何一个计数变了，{@link VerdictCache} 都要重新算，即使几个计数加起来和之前一样
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public class VerdictCacheTest extends TestCase {
+
+    public void testRecomputesWhenCountsShiftButSumStays() {
+        VerdictCache<String> cache = new VerdictCache<>();
+        AtomicInteger computations = new AtomicInteger();
+
+        assertTrue(cache.get("a", new long[]{1, 2}, key -> computations.incrementAndGet() > 0));
+        assertTrue(cache.get("a", new long[]{1, 2}, key -> computations.incrementAndGet() > 0));
+        assertEquals(1, computations.get());
+
+        assertFalse(cache.get("a", new long[]{2, 1}, key -> computations.incrementAndGet() < 0));
+        assertEquals(2, computations.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.hwhaocool.codeInspection.deadcode;
+
+import com.intellij.analysis.AnalysisScope;
+import com.intellij.codeInspection.GlobalInspectionContext;
+import com.intellij.codeInspection.ex.GlobalInspectionContextForTests;
+import com.intellij.codeInspection.ex.GlobalInspectionToolWrapper;
+import com.intellij.codeInspection.ex.InspectionToolWrapper;
+import com.intellij.codeInspection.reference.RefClass;
+import com.intellij.codeInspection.reference.RefElement;
+import com.intellij.codeInspection.reference.RefEntity;
+import com.intellij.codeInspection.reference.RefField;
+import com.intellij.codeInspection.reference.RefJavaVisitor;
+import com.intellij.codeInspection.reference.RefMethod;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiMethod;
+import com.intellij.testFramework.InspectionTestUtil;
+import com.intellij.testFramework.InspectionsKt;
+import com.intellij.testFramework.fixtures.LightJavaCodeInsightFixtureTestCase;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 跑一次完整的检查（建图、runInspection、外部使用搜索的各个阶段），然后看 RefManager 里的可达性
+ * @author YellowTail
+ * @since 2020-12-30
+ */
+public abstract class YellowVoInspectionTestCase extends LightJavaCodeInsightFixtureTestCase {
+
+    /**
+     * 用 tool 检查整个 project，检查完之后上下文还没有 cleanup，RefManager 还可以用
+     * @param tool 检查
+     * @return 上下文，用完之后要 cleanup
+     * @author YellowTail
+     * @since 2020-12-30
+     */
+    @NotNull
+    protected GlobalInspectionContextForTests runInspection(@NotNull YellowVoInspection tool) {
+        GlobalInspectionToolWrapper toolWrapper = new GlobalInspectionToolWrapper(tool);
+        AnalysisScope scope = new AnalysisScope(getProject());
+        GlobalInspectionContextForTests context = InspectionsKt.createGlobalContextForTool(scope, getProject(),
+                Collections.<InspectionToolWrapper<?, ?>>singletonList(toolWrapper));
+        InspectionTestUtil.runTool(toolWrapper, scope, context);
+        return context;
+    }
+
+    @Nullable
+    protected static RefElement findReference(@NotNull GlobalInspectionContext context, @NotNull PsiElement element) {
+        return context.getRefManager().getReference(element);
+    }
+
+    @NotNull
+    protected PsiMethod findMethod(@NotNull String className, @NotNull String methodName) {
+        PsiClass psiClass = myFixture.findClass(className);
+        PsiMethod[] methods = psiClass.findMethodsByName(methodName, false);
+        assertEquals(className + "." + methodName, 1, methods.length);
+        return methods[0];
+    }
+
+    /**
+     * @return 所有类、方法、字段的外部名字 -> 是否可达
+     */
+    @NotNull
+    protected static Map<String, Boolean> collectReachability(@NotNull GlobalInspectionContext context) {
+        Map<String, Boolean> reachability = new TreeMap<>();
+        context.getRefManager().iterate(new RefJavaVisitor() {
+            @Override
+            public void visitElement(@NotNull RefEntity refEntity) {
+                if (refEntity instanceof RefClass || refEntity instanceof RefMethod || refEntity instanceof RefField) {
+                    reachability.put(refEntity.getExternalName(), ((RefElement) refEntity).isReachable());
+                }
+            }
+        });
+        return reachability;
+    }
+}